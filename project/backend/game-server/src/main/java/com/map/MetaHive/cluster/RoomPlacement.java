@@ -0,0 +1,115 @@
+package com.map.MetaHive.cluster;
+
+import com.map.MetaHive.model.Room;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Maps room ids to game-server nodes by consistent hashing. Each node is placed on
+ * a hash ring at {@code virtual-nodes} points and a room belongs to the first node
+ * at or after the hash of its id, so adding or removing a node only moves the rooms
+ * in the ranges that node takes over or gives up.
+ * <p>
+ * Nodes are configured as {@code game.cluster.nodes=node-a=http://host-a:9502/ws,node-b=...}
+ * and every node must use the same list. With no list configured the local node
+ * owns every room, which is the single-server setup.
+ */
+@Component
+public class RoomPlacement {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomPlacement.class);
+
+    @Value("${game.cluster.node-id:local}")
+    private String nodeId = "local";
+
+    // Comma-separated nodeId=url entries; the url is where clients connect to that node
+    @Value("${game.cluster.nodes:}")
+    private String nodes = "";
+
+    @Value("${game.cluster.virtual-nodes:128}")
+    private int virtualNodes = 128;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Map<String, String> nodeUrls = new LinkedHashMap<>();
+
+    @PostConstruct
+    void buildRing() {
+        ring.clear();
+        nodeUrls.clear();
+        for (String entry : nodes.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected nodeId=url in game.cluster.nodes: " + entry);
+            }
+            nodeUrls.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+        }
+        if (!nodeUrls.isEmpty() && !nodeUrls.containsKey(nodeId)) {
+            throw new IllegalStateException("game.cluster.nodes does not contain the local node " + nodeId);
+        }
+        for (String node : nodeUrls.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+        if (isClustered()) {
+            log.info("Room placement: node {} of {}", nodeId, nodeUrls.keySet());
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isClustered() {
+        return !ring.isEmpty();
+    }
+
+    public String ownerOf(String roomId) {
+        if (ring.isEmpty()) {
+            return nodeId;
+        }
+        // Overflow instances stay on the node that owns their logical room
+        Map.Entry<Long, String> owner = ring.ceilingEntry(hash(Room.logicalId(roomId)));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    public boolean isLocal(String roomId) {
+        return nodeId.equals(ownerOf(roomId));
+    }
+
+    public String urlOf(String node) {
+        return nodeUrls.get(node);
+    }
+
+    public Map<String, String> getNodeUrls() {
+        return Collections.unmodifiableMap(nodeUrls);
+    }
+
+    // 64-bit FNV-1a followed by the MurmurHash3 finalizer to spread short ids over the ring
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,7 +1,17 @@
 package com.map.MetaHive.config;
 
+import com.map.MetaHive.service.SessionRegistry;
+import com.map.MetaHive.websocket.InboundRateLimiter;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import com.map.MetaHive.websocket.PerMessageDeflateFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.*;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -12,20 +22,119 @@ import org.springframework.context.annotation.Bean;
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private OutboundFlowControl outboundFlowControl;
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private InboundRateLimiter inboundRateLimiter;
+
+    // Created by the broker configuration itself; lazy to avoid a cycle
+    @Autowired
+    @Lazy
+    @Qualifier("messageBrokerTaskScheduler")
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    // STOMP heartbeat interval in both directions; the broker drops sessions that miss them
+    @Value("${game.session.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    // A session whose pending writes exceed either limit is closed by Spring
+    @Value("${game.outbound.send-time-limit-ms:5000}")
+    private int sendTimeLimitMs;
+
+    @Value("${game.outbound.send-buffer-size-limit:262144}")
+    private int sendBufferSizeLimit;
+
+    // Largest inbound STOMP message; client frames are a few hundred bytes, so anything larger is abuse
+    @Value("${game.websocket.message-size-limit:32768}")
+    private int messageSizeLimit;
+
+    // Plain WebSocket endpoint without SockJS framing, for browsers and the desktop client
+    @Value("${game.websocket.native.enabled:true}")
+    private boolean nativeEndpointEnabled;
+
+    @Value("${game.websocket.native.path:/ws-native}")
+    private String nativeEndpointPath;
+
+    @Value("${game.websocket.permessage-deflate:false}")
+    private boolean permessageDeflate;
+
+    // Relay /topic and /queue through an external STOMP broker shared by all game-server nodes
+    @Value("${game.broker.relay.enabled:false}")
+    private boolean relayEnabled;
+
+    @Value("${game.broker.relay.host:localhost}")
+    private String relayHost;
+
+    @Value("${game.broker.relay.port:61613}")
+    private int relayPort;
+
+    @Value("${game.broker.relay.login:guest}")
+    private String relayLogin;
+
+    @Value("${game.broker.relay.passcode:guest}")
+    private String relayPasscode;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enables an in-memory broker that listens on /topic, /queue
-        config.enableSimpleBroker("/topic", "/queue");
+        if (relayEnabled) {
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode);
+        } else {
+            // Enables an in-memory broker that listens on /topic, /queue
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[]{heartbeatMs, heartbeatMs})
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
         // Client messages to /app/* are routed to @MessageMapping methods
         config.setApplicationDestinationPrefixes("/app");
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
-        // WebSocket handshake endpoint
+        // SockJS endpoint, for clients that cannot hold a plain WebSocket open
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+        if (nativeEndpointEnabled) {
+            // Same STOMP handling, without the SockJS info request and frame envelope
+            registry.addEndpoint(nativeEndpointPath)
+                    .setAllowedOriginPatterns("*");
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(outboundFlowControl::decorate);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Refreshes each session's last-seen time, heartbeats included, then drops frames over the rate limits
+        registration.interceptors(sessionRegistry, inboundRateLimiter);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Coalesces superseded snapshots and sheds deltas for lagging sessions
+        registration.interceptors(outboundFlowControl);
+    }
+
+    // Declines the compression extension in WebSocket handshakes unless enabled
+    @Bean
+    public PerMessageDeflateFilter perMessageDeflateFilter() {
+        return new PerMessageDeflateFilter(permessageDeflate);
     }
 
     // CORS for REST endpoints or SockJS fallback
@@ -1,42 +1,61 @@
 package com.map.MetaHive.controller;
 
+import com.map.MetaHive.cluster.RoomPlacement;
+import com.map.MetaHive.logging.SampledLogger;
 import com.map.MetaHive.model.Player;
 import com.map.MetaHive.model.Room;
 import com.map.MetaHive.service.GameSessionService;
+import com.map.MetaHive.service.RoomBroadcaster;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 @Controller
 public class PlayerController {
 
+    private static final Pattern ROOM_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    private static final Logger log = LoggerFactory.getLogger(PlayerController.class);
+    // Rejected inputs arrive at up to the move rate of every client of a closed room
+    private static final SampledLogger rejectedLog = new SampledLogger(log, 5, 20);
+
     @Autowired
     private GameSessionService gameSessionService;
 
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private RoomBroadcaster roomBroadcaster;
 
-    // For simplicity, define a default spawn inside the map
-    private static final double DEFAULT_SPAWN_X = 400;
-    private static final double DEFAULT_SPAWN_Y = 300;
+    @Autowired
+    private RoomPlacement roomPlacement;
+
+    @Autowired
+    private OutboundFlowControl outboundFlowControl;
 
+    // Replies go to /user/queue/... of the requesting session only, not to every client
     @MessageMapping("/createRoom")
-    public void createRoom(@Payload Map<String, Object> payload) {
-        String username = (String) payload.get("username");
+    public void createRoom(SimpMessageHeaderAccessor headerAccessor, @Payload Map<String, Object> payload) {
         String roomId = gameSessionService.createRoom();
 
         Map<String, Object> response = new HashMap<>();
         response.put("roomId", roomId);
-        response.put("success", true);
+        response.put("logicalRoomId", roomId);
+        response.put("instance", 1);
+        response.put("success", roomId != null);
+        if (roomId == null) {
+            response.put("error", "Server is at its room limit");
+        }
 
-        System.out.println("Room created: " + roomId);
-        messagingTemplate.convertAndSend("/queue/roomCreated", response);
+        roomBroadcaster.sendToSession(headerAccessor.getSessionId(), "/queue/roomCreated", response);
     }
 
     @MessageMapping("/joinRoom")
@@ -45,78 +64,111 @@ public class PlayerController {
         String roomId = (String) payload.get("roomId");
 
         Map<String, Object> response = new HashMap<>();
-
-        // Create if doesn't exist
-        if (!gameSessionService.roomExists(roomId)) {
-            System.out.println("Room " + roomId + " doesn't exist. Creating new one.");
-            Room newRoom = new Room(roomId);
-            gameSessionService.addRoom(roomId, newRoom);
+        response.put("roomId", roomId);
+        // Joining implicitly creates the room, so only accept ids shaped like generated ones
+        if (roomId == null || !ROOM_ID_PATTERN.matcher(roomId).matches()) {
+            response.put("success", false);
+            response.put("error", "Invalid room ID");
+            roomBroadcaster.sendToSession(headerAccessor.getSessionId(), "/queue/joinResult", response);
+            return;
         }
 
-        response.put("success", true);
-        response.put("roomId", roomId);
+        // Rooms live on the node their id hashes to; send the client there instead
+        if (!roomPlacement.isLocal(roomId)) {
+            String owner = roomPlacement.ownerOf(roomId);
+            response.put("success", false);
+            response.put("redirect", true);
+            response.put("node", owner);
+            response.put("url", roomPlacement.urlOf(owner));
+            log.debug("Room {} is owned by node {}, redirecting {}", roomId, owner, username);
+            roomBroadcaster.sendToSession(headerAccessor.getSessionId(), "/queue/joinResult", response);
+            return;
+        }
 
-        System.out.println("Player " + username + " joining room: " + roomId);
-        messagingTemplate.convertAndSend("/queue/joinResult", response);
+        // Create if doesn't exist; crowded rooms overflow into further instances
+        Room instance = gameSessionService.joinInstance(roomId,
+                (String) payload.get("playerId"), (String) payload.get("withPlayerId"));
+        response.put("success", instance != null);
+        if (instance == null) {
+            String error = gameSessionService.roomExists(roomId) ? "Room is full" : "Server is at its room limit";
+            response.put("error", error);
+            log.info("Player {} cannot join room {}: {}", username, roomId, error);
+        } else {
+            // Clients register, move and subscribe using the instance id
+            response.put("roomId", instance.getId());
+            response.put("logicalRoomId", roomId);
+            response.put("instance", instance.getInstanceNumber());
+            log.debug("Player {} joining room: {}", username, instance.getId());
+        }
+        roomBroadcaster.sendToSession(headerAccessor.getSessionId(), "/queue/joinResult", response);
     }
 
     // ---------------------- REGISTER PLAYER ----------------------
     @MessageMapping("/register")
-    public void registerPlayer(@Payload Player incoming) {
+    public void registerPlayer(SimpMessageHeaderAccessor headerAccessor, @Payload Player incoming) {
         if (incoming.getId() == null || incoming.getId().isEmpty()) {
-            System.out.println("Invalid player ID received.");
+            rejectedLog.atWarn().addKeyValue("sessionId", headerAccessor.getSessionId()).log("Invalid player ID received");
             return;
         }
-        if (!gameSessionService.roomExists(incoming.getRoomId())) {
-            System.out.println("Room does not exist: " + incoming.getRoomId());
-            return;
+        // Existing players keep their position; new ones are placed at the default spawn
+        if (!gameSessionService.registerPlayer(incoming, headerAccessor.getSessionId())) {
+            rejectedLog.atDebug().addKeyValue("roomId", incoming.getRoomId()).addKeyValue("playerId", incoming.getId())
+                    .log("Register rejected: room does not exist");
         }
+    }
 
-        // Check if player already in the room
-        Player existing = gameSessionService.getPlayerById(incoming.getRoomId(), incoming.getId());
-        if (existing != null) {
-            // Already in the room, so keep the old x,y
-            System.out.println("Player " + existing.getUsername()
-                    + " already exists at (" + existing.getX() + "," + existing.getY() + ")");
-            // Optionally update user name if needed
-            existing.setUsername(incoming.getUsername());
-            broadcastPlayerStates(incoming.getRoomId());
-            return;
+    // ---------------------- MOVE PLAYER ----------------------
+    // Inputs are queued and applied by the room's tick loop, which broadcasts once per tick
+    @MessageMapping("/move")
+    public void movePlayer(@Payload Player playerMovement) {
+        if (!gameSessionService.submitMove(playerMovement)) {
+            rejectedLog.atDebug().addKeyValue("roomId", playerMovement.getRoomId())
+                    .addKeyValue("playerId", playerMovement.getId()).log("Room not found for movement");
         }
+    }
 
-        // If new player, set default spawn
-        incoming.setX(DEFAULT_SPAWN_X);
-        incoming.setY(DEFAULT_SPAWN_Y);
+    // ---------------------- BINARY PROTOCOL ----------------------
+    // Opt-in per session: only the requesting session gets /user/queue/rooms/{roomId}/delta.bin frames
+    @MessageMapping("/rooms/{roomId}/protocol")
+    public void negotiateProtocol(SimpMessageHeaderAccessor headerAccessor,
+                                  @DestinationVariable String roomId,
+                                  @Payload Map<String, Object> payload) {
+        String sessionId = headerAccessor.getSessionId();
+        boolean requested = "binary".equals(payload.get("protocol"));
+        // SockJS frames are text: STOMP sends byte payloads as text there and inbound SockJS is text only
+        boolean nativeSession = outboundFlowControl.isNativeWebSocket(sessionId);
+        boolean binary = requested && nativeSession && gameSessionService.enableBinaryProtocol(roomId, sessionId);
 
-        System.out.println("New player: " + incoming.getUsername() + " in room: "
-                + incoming.getRoomId() + " spawn @(" + DEFAULT_SPAWN_X + "," + DEFAULT_SPAWN_Y + ")");
+        Map<String, Object> response = new HashMap<>();
+        response.put("roomId", roomId);
+        response.put("protocol", binary ? "binary" : "json");
+        response.put("version", 1);
+        response.put("success", binary);
+        if (requested && !nativeSession) {
+            response.put("error", "Binary frames need the plain WebSocket endpoint");
+        }
+        roomBroadcaster.sendToSession(sessionId, "/queue/protocol", response);
+    }
 
-        gameSessionService.addPlayer(incoming);
-        broadcastPlayerStates(incoming.getRoomId());
+    @MessageMapping("/rooms/{roomId}/move.bin")
+    public void movePlayerBinary(SimpMessageHeaderAccessor headerAccessor,
+                                 @DestinationVariable String roomId, @Payload byte[] frame) {
+        if (!gameSessionService.submitBinaryMove(roomId, frame, headerAccessor.getSessionId())) {
+            rejectedLog.atDebug().addKeyValue("roomId", roomId).addKeyValue("bytes", frame.length)
+                    .log("Rejected binary movement frame");
+        }
     }
 
-    // ---------------------- MOVE PLAYER ----------------------
-    @MessageMapping("/move")
-    public void movePlayer(@Payload Player playerMovement) {
-        System.out.println("Received movement from player ID: "
-                + playerMovement.getId() + " in room: " + playerMovement.getRoomId());
-        Player existingPlayer = gameSessionService.getPlayerById(
-                playerMovement.getRoomId(),
-                playerMovement.getId()
-        );
-
-        if (existingPlayer != null) {
-            existingPlayer.setX(playerMovement.getX());
-            existingPlayer.setY(playerMovement.getY());
-            existingPlayer.setDirection(playerMovement.getDirection());
-            existingPlayer.setIsMoving(playerMovement.getIsMoving());
-            existingPlayer.setAnimation(playerMovement.getAnimation());
-            existingPlayer.setTimestamp(playerMovement.getTimestamp());
-
-            broadcastPlayerStates(playerMovement.getRoomId());
-        } else {
-            System.out.println("Player ID not found: " + playerMovement.getId()
-                    + " in room: " + playerMovement.getRoomId());
+    // ---------------------- RECONCILIATION ----------------------
+    // Replies on /user/queue/rooms/{roomId}/history with the player's recent authoritative states
+    @MessageMapping("/rooms/{roomId}/history")
+    public void requestHistory(SimpMessageHeaderAccessor headerAccessor,
+                               @DestinationVariable String roomId,
+                               @Payload Map<String, Object> payload) {
+        Object sinceSeq = payload.get("sinceSeq");
+        if (!gameSessionService.sendHistory(roomId, (String) payload.get("playerId"),
+                sinceSeq instanceof Number number ? number.longValue() : 0, headerAccessor.getSessionId())) {
+            rejectedLog.atDebug().addKeyValue("roomId", roomId).log("Rejected history request");
         }
     }
 
@@ -126,20 +178,11 @@ public class PlayerController {
         String roomId = payload.get("roomId");
         String playerId = payload.get("playerId");
         if (roomId == null || playerId == null) {
-            System.out.println("Invalid leaveRoom payload");
+            rejectedLog.atWarn().log("Invalid leaveRoom payload");
             return;
         }
-        System.out.println("Removing player " + playerId + " from room " + roomId);
+        log.debug("Removing player {} from room {}", playerId, roomId);
 
         gameSessionService.removePlayer(roomId, playerId);
-        broadcastPlayerStates(roomId);
-    }
-
-    // ---------------------- BROADCAST ----------------------
-    private void broadcastPlayerStates(String roomId) {
-        Map<String, Player> players = gameSessionService.getPlayersInRoom(roomId);
-        System.out.println("Broadcasting player states for room " + roomId
-                + ": " + players.size() + " players");
-        messagingTemplate.convertAndSend("/topic/rooms/" + roomId + "/players", players);
     }
 }
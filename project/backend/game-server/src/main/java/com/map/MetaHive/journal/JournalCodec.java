@@ -0,0 +1,214 @@
+package com.map.MetaHive.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Record encoding of journal segments. Each segment starts with a header and a
+ * keyframe, followed by length-prefixed delta records; a zero length marks the
+ * end of the written part of a preallocated segment.
+ *
+ * <pre>
+ * header  i32 magic "MHJ1" | u8 version | i64 firstTick | i64 createdAt (epoch ms)
+ * record  varint length | u8 type (1 keyframe, 2 delta)
+ *         | varint tick - previous tick | zigzag serverTime - previous serverTime
+ *         | varint m | m * varint left handle gap
+ *         | varint j | j * (varint handle | string playerId | string username)
+ *         | varint n | n * (varint handle gap | zigzag dx | zigzag dy | u8 state)
+ * string  varint (UTF-8 length + 1), 0 for null | bytes
+ * </pre>
+ *
+ * Handles are sorted and written as gaps from the previous one. Positions are
+ * {@link com.map.MetaHive.protocol.FixedPoint} values written as the difference
+ * from the player's previous position in the segment (from 0 for its first), so
+ * a walking player costs a few bytes per tick. Both sides keep that baseline in
+ * a {@link Baseline}, reset at the start of every segment, which keeps segments
+ * independently readable.
+ */
+final class JournalCodec {
+
+    static final int MAGIC = 0x4D484A31;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 21;
+
+    static final byte TYPE_KEYFRAME = 1;
+    static final byte TYPE_DELTA = 2;
+
+    private JournalCodec() {
+    }
+
+    static final class Baseline {
+        private long tick;
+        private long serverTime;
+        // handle -> {x, y} last written in this segment
+        private final Map<Integer, int[]> positions = new HashMap<>();
+
+        void reset(long firstTick) {
+            tick = firstTick;
+            serverTime = 0;
+            positions.clear();
+        }
+    }
+
+    static void writeHeader(ByteBuffer buffer, long firstTick, long createdAt) {
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(firstTick);
+        buffer.putLong(createdAt);
+    }
+
+    /**
+     * Reads a segment header, leaving the buffer at the first record.
+     *
+     * @return the first tick of the segment
+     */
+    static long readHeader(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a journal segment");
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported journal version " + version);
+        }
+        long firstTick = buffer.getLong();
+        buffer.getLong();
+        return firstTick;
+    }
+
+    /**
+     * Upper bound of the encoded size of a record body, to size the scratch buffer.
+     */
+    static int maxBodySize(JournalFrame frame) {
+        int size = 1 + 10 + 10 + 5 + 5 * frame.getLeftHandles().length + 5 + 5 + 16 * frame.getUpdateCount();
+        for (JournalFrame.Join join : frame.getJoined()) {
+            size += 5 + maxStringSize(join.getPlayerId()) + maxStringSize(join.getUsername());
+        }
+        return size;
+    }
+
+    private static int maxStringSize(String value) {
+        return 5 + (value != null ? 3 * value.length() : 0);
+    }
+
+    /**
+     * Encodes a record body into {@code out} and advances the baseline.
+     */
+    static void encode(JournalFrame frame, Baseline baseline, ByteBuffer out) {
+        out.put(frame.isKeyframe() ? TYPE_KEYFRAME : TYPE_DELTA);
+        VarInt.putUnsigned(out, frame.getTick() - baseline.tick);
+        VarInt.putSigned(out, frame.getServerTime() - baseline.serverTime);
+        baseline.tick = frame.getTick();
+        baseline.serverTime = frame.getServerTime();
+
+        int[] left = frame.getLeftHandles();
+        Arrays.sort(left);
+        VarInt.putUnsigned(out, left.length);
+        int previous = 0;
+        for (int handle : left) {
+            VarInt.putUnsigned(out, handle - previous);
+            previous = handle;
+            baseline.positions.remove(handle);
+        }
+
+        VarInt.putUnsigned(out, frame.getJoined().size());
+        for (JournalFrame.Join join : frame.getJoined()) {
+            VarInt.putUnsigned(out, join.getHandle());
+            putString(out, join.getPlayerId());
+            putString(out, join.getUsername());
+        }
+
+        // Sort updates by handle, carrying the index in the low bits
+        int count = frame.getUpdateCount();
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) frame.getHandle(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        VarInt.putUnsigned(out, count);
+        previous = 0;
+        for (long entry : order) {
+            int i = (int) entry;
+            int handle = frame.getHandle(i);
+            int[] last = baseline.positions.computeIfAbsent(handle, h -> new int[2]);
+            VarInt.putUnsigned(out, handle - previous);
+            VarInt.putSigned(out, frame.getX(i) - last[0]);
+            VarInt.putSigned(out, frame.getY(i) - last[1]);
+            out.put(frame.getState(i));
+            previous = handle;
+            last[0] = frame.getX(i);
+            last[1] = frame.getY(i);
+        }
+    }
+
+    /**
+     * Decodes one record body and advances the baseline.
+     */
+    static JournalFrame decode(ByteBuffer in, Baseline baseline) {
+        byte type = in.get();
+        if (type != TYPE_KEYFRAME && type != TYPE_DELTA) {
+            throw new IllegalStateException("Unknown journal record type " + type);
+        }
+        long tick = baseline.tick + VarInt.getUnsigned(in);
+        long serverTime = baseline.serverTime + VarInt.getSigned(in);
+        baseline.tick = tick;
+        baseline.serverTime = serverTime;
+
+        int[] left = new int[(int) VarInt.getUnsigned(in)];
+        int previous = 0;
+        for (int i = 0; i < left.length; i++) {
+            previous += (int) VarInt.getUnsigned(in);
+            left[i] = previous;
+            baseline.positions.remove(previous);
+        }
+
+        int joinCount = (int) VarInt.getUnsigned(in);
+        List<JournalFrame.Join> joined = new ArrayList<>(joinCount);
+        for (int i = 0; i < joinCount; i++) {
+            int handle = (int) VarInt.getUnsigned(in);
+            joined.add(new JournalFrame.Join(handle, getString(in), getString(in)));
+        }
+
+        int count = (int) VarInt.getUnsigned(in);
+        int[] handles = new int[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        byte[] states = new byte[count];
+        previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += (int) VarInt.getUnsigned(in);
+            int[] last = baseline.positions.computeIfAbsent(previous, h -> new int[2]);
+            last[0] += (int) VarInt.getSigned(in);
+            last[1] += (int) VarInt.getSigned(in);
+            handles[i] = previous;
+            xs[i] = last[0];
+            ys[i] = last[1];
+            states[i] = in.get();
+        }
+        return new JournalFrame(tick, serverTime, type == TYPE_KEYFRAME, joined, handles, xs, ys, states, left);
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            VarInt.putUnsigned(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        VarInt.putUnsigned(out, bytes.length + 1L);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = (int) VarInt.getUnsigned(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,140 @@
+package com.map.MetaHive.journal;
+
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.protocol.BinaryMovementCodec;
+import com.map.MetaHive.protocol.FixedPoint;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One tick of a room as recorded in its journal: players that joined, the
+ * positions and state bits of players that changed, and handles of players that
+ * left. Positions are {@link FixedPoint} values. A keyframe frame instead
+ * carries every player in the room, as joins plus updates, and replaces any view
+ * built from earlier frames.
+ * <p>
+ * Frames are immutable so the tick loop can hand them to the journal writer
+ * without copying.
+ */
+public final class JournalFrame {
+
+    private final long tick;
+    private final long serverTime;
+    private final boolean keyframe;
+    private final List<Join> joined;
+    private final int[] handles;
+    private final int[] xs;
+    private final int[] ys;
+    private final byte[] states;
+    private final int[] leftHandles;
+
+    JournalFrame(long tick, long serverTime, boolean keyframe, List<Join> joined,
+                 int[] handles, int[] xs, int[] ys, byte[] states, int[] leftHandles) {
+        this.tick = tick;
+        this.serverTime = serverTime;
+        this.keyframe = keyframe;
+        this.joined = joined;
+        this.handles = handles;
+        this.xs = xs;
+        this.ys = ys;
+        this.states = states;
+        this.leftHandles = leftHandles;
+    }
+
+    /**
+     * Captures a tick on the room's event loop. {@code changed} must include the
+     * players in {@code joined}.
+     */
+    public static JournalFrame of(long tick, long serverTime, Collection<Player> joined,
+                                  Collection<Player> changed, Collection<Integer> leftHandles) {
+        List<Join> joins = new ArrayList<>(joined.size());
+        for (Player player : joined) {
+            joins.add(new Join(player.getHandle(), player.getId(), player.getUsername()));
+        }
+        int count = changed.size();
+        int[] handles = new int[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        byte[] states = new byte[count];
+        int i = 0;
+        for (Player player : changed) {
+            handles[i] = player.getHandle();
+            xs[i] = FixedPoint.toFixed(player.getX());
+            ys[i] = FixedPoint.toFixed(player.getY());
+            states[i] = BinaryMovementCodec.encodeState(player);
+            i++;
+        }
+        int[] left = new int[leftHandles.size()];
+        i = 0;
+        for (int handle : leftHandles) {
+            left[i++] = handle;
+        }
+        return new JournalFrame(tick, serverTime, false, joins, handles, xs, ys, states, left);
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getServerTime() {
+        return serverTime;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+
+    public List<Join> getJoined() {
+        return joined;
+    }
+
+    public int getUpdateCount() {
+        return handles.length;
+    }
+
+    public int getHandle(int index) {
+        return handles[index];
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public byte getState(int index) {
+        return states[index];
+    }
+
+    public int[] getLeftHandles() {
+        return leftHandles.clone();
+    }
+
+    public static final class Join {
+        private final int handle;
+        private final String playerId;
+        private final String username;
+
+        public Join(int handle, String playerId, String username) {
+            this.handle = handle;
+            this.playerId = playerId;
+            this.username = username;
+        }
+
+        public int getHandle() {
+            return handle;
+        }
+
+        public String getPlayerId() {
+            return playerId;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.map.MetaHive.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Reads back the journal of one room, segment by segment in the order they
+ * were written. A record cut short by a crash ends its segment; reading
+ * continues with the next one, which starts from a keyframe.
+ * <p>
+ * {@link #replay} paces the frames by their room clock, optionally sped up, to
+ * watch a session back at the rate it happened; {@link #read} streams them as
+ * fast as they decode, for analytics.
+ */
+public class JournalReader {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalReader.class);
+
+    private final Path roomDir;
+
+    public JournalReader(Path roomDir) {
+        this.roomDir = roomDir;
+    }
+
+    public static JournalReader forRoom(Path journalDir, String roomId) {
+        return new JournalReader(journalDir.resolve(roomId));
+    }
+
+    /**
+     * Segment files of the room, oldest first. Names start with the creation time,
+     * zero-padded, so they sort chronologically.
+     */
+    public List<Path> segments() throws IOException {
+        if (!Files.isDirectory(roomDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(roomDir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    /**
+     * Streams every frame of the room to {@code consumer}.
+     *
+     * @return the number of frames read
+     */
+    public long read(Consumer<JournalFrame> consumer) throws IOException {
+        long frames = 0;
+        for (Path segment : segments()) {
+            frames += readSegment(segment, consumer);
+        }
+        return frames;
+    }
+
+    /**
+     * Streams the room's frames at {@code speed} times the rate they were recorded,
+     * sleeping between frames by the difference of their room clocks. The clock
+     * restarts with each lifetime of the room, which is replayed right after the
+     * previous one.
+     *
+     * @return the number of frames replayed
+     */
+    public long replay(double speed, Consumer<JournalFrame> consumer) throws IOException, InterruptedException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive: " + speed);
+        }
+        long originNanos = System.nanoTime();
+        long originServerTime = Long.MIN_VALUE;
+        long frames = 0;
+        for (Path segment : segments()) {
+            List<JournalFrame> decoded = new ArrayList<>();
+            readSegment(segment, decoded::add);
+            for (JournalFrame frame : decoded) {
+                if (originServerTime == Long.MIN_VALUE || frame.getServerTime() < originServerTime) {
+                    originNanos = System.nanoTime();
+                    originServerTime = frame.getServerTime();
+                }
+                long elapsedNanos = TimeUnit.MILLISECONDS.toNanos(frame.getServerTime() - originServerTime);
+                long dueNanos = originNanos + (long) (elapsedNanos / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                consumer.accept(frame);
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    private long readSegment(Path path, Consumer<JournalFrame> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        long frames = 0;
+        try {
+            JournalCodec.Baseline baseline = new JournalCodec.Baseline();
+            baseline.reset(JournalCodec.readHeader(buffer));
+            while (buffer.hasRemaining()) {
+                int length = (int) VarInt.getUnsigned(buffer);
+                if (length == 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer body = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                consumer.accept(JournalCodec.decode(body, baseline));
+                frames++;
+            }
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            log.warn("Stopped reading journal segment {} after {} frames: {}", path, frames, e.toString());
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,182 @@
+package com.map.MetaHive.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends the frames of one room to memory-mapped segment files in the room's
+ * journal directory. A segment is preallocated at {@code segmentBytes} and
+ * mapped once, so an append is a copy into the page cache; when a record does
+ * not fit, the segment is trimmed to its written length and a new one is
+ * started. Every segment begins with a keyframe of the whole room, built from
+ * the state this writer tracks, so a replay can start at any segment.
+ * <p>
+ * Not thread-safe: used only by the journal writer thread.
+ */
+final class JournalSegmentWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalSegmentWriter.class);
+
+    private final Path roomDir;
+    private final long segmentBytes;
+    private final JournalCodec.Baseline baseline = new JournalCodec.Baseline();
+    // Current room state by handle, for the keyframe at the start of each segment
+    private final Map<Integer, Member> members = new HashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private ByteBuffer scratch = ByteBuffer.allocate(16 * 1024);
+    private int segmentCount;
+
+    JournalSegmentWriter(Path roomDir, long segmentBytes) {
+        this.roomDir = roomDir;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * @return the number of bytes appended to the journal
+     */
+    int append(JournalFrame frame) throws IOException {
+        track(frame);
+        if (segment != null) {
+            int length = encode(frame);
+            if (segment.remaining() >= VarInt.sizeOfUnsigned(length) + length) {
+                return putRecord(length);
+            }
+            finishSegment();
+        }
+        // A new segment starts from a keyframe that already includes this frame
+        baseline.reset(frame.getTick());
+        int length = encode(keyframe(frame.getTick(), frame.getServerTime()));
+        int recordSize = VarInt.sizeOfUnsigned(length) + length;
+        openSegment(frame.getTick(), Math.max(segmentBytes, JournalCodec.HEADER_SIZE + recordSize + 1L));
+        return JournalCodec.HEADER_SIZE + putRecord(length);
+    }
+
+    void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    int getSegmentCount() {
+        return segmentCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishSegment();
+    }
+
+    private void track(JournalFrame frame) {
+        for (int handle : frame.getLeftHandles()) {
+            members.remove(handle);
+        }
+        for (JournalFrame.Join join : frame.getJoined()) {
+            members.put(join.getHandle(), new Member(join.getPlayerId(), join.getUsername()));
+        }
+        for (int i = 0; i < frame.getUpdateCount(); i++) {
+            Member member = members.get(frame.getHandle(i));
+            if (member != null) {
+                member.x = frame.getX(i);
+                member.y = frame.getY(i);
+                member.state = frame.getState(i);
+            }
+        }
+    }
+
+    private JournalFrame keyframe(long tick, long serverTime) {
+        int count = members.size();
+        List<JournalFrame.Join> joined = new ArrayList<>(count);
+        int[] handles = new int[count];
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        byte[] states = new byte[count];
+        int i = 0;
+        for (Map.Entry<Integer, Member> entry : members.entrySet()) {
+            Member member = entry.getValue();
+            joined.add(new JournalFrame.Join(entry.getKey(), member.playerId, member.username));
+            handles[i] = entry.getKey();
+            xs[i] = member.x;
+            ys[i] = member.y;
+            states[i] = member.state;
+            i++;
+        }
+        return new JournalFrame(tick, serverTime, true, joined, handles, xs, ys, states, new int[0]);
+    }
+
+    // Encodes the record body into the scratch buffer and returns its length
+    private int encode(JournalFrame frame) {
+        int maxSize = JournalCodec.maxBodySize(frame);
+        if (scratch.capacity() < maxSize) {
+            scratch = ByteBuffer.allocate(Math.max(maxSize, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        JournalCodec.encode(frame, baseline, scratch);
+        scratch.flip();
+        return scratch.remaining();
+    }
+
+    private int putRecord(int length) {
+        int start = segment.position();
+        VarInt.putUnsigned(segment, length);
+        segment.put(scratch);
+        return segment.position() - start;
+    }
+
+    private void openSegment(long firstTick, long size) throws IOException {
+        Files.createDirectories(roomDir);
+        long createdAt = System.currentTimeMillis();
+        Path path = roomDir.resolve(String.format("%013d-%010d.seg", createdAt, firstTick));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        JournalCodec.writeHeader(segment, firstTick, createdAt);
+        segmentCount++;
+    }
+
+    private void finishSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        int written = segment.position();
+        segment.force();
+        segment = null;
+        try {
+            // Readers stop at the zero length after the last record either way, so
+            // a platform that cannot truncate a mapped file only wastes the space
+            channel.truncate(written);
+        } catch (IOException e) {
+            log.warn("Could not trim journal segment in {}: {}", roomDir, e.getMessage());
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static final class Member {
+        private final String playerId;
+        private final String username;
+        private int x;
+        private int y;
+        private byte state;
+
+        private Member(String playerId, String username) {
+            this.playerId = playerId;
+            this.username = username;
+        }
+    }
+}
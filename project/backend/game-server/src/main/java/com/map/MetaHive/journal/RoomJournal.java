@@ -0,0 +1,231 @@
+package com.map.MetaHive.journal;
+
+import com.map.MetaHive.logging.SampledLogger;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Optional append-only journal of room activity, one directory of segment files
+ * per room (see {@link JournalCodec} for the format, {@link JournalReader} to
+ * read it back). Room event loops hand over a {@link JournalFrame} per tick with
+ * a non-blocking offer; a single writer thread drains them in batches and
+ * appends them to memory-mapped segments, so the tick path never waits on disk.
+ * When the writer falls behind and the queue is full, frames are dropped and
+ * counted rather than slowing the rooms down; the next segment's keyframe
+ * resynchronises a reader.
+ */
+@Component
+public class RoomJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomJournal.class);
+    // A full disk fails every frame of every room
+    private static final SampledLogger writeFailureLog = new SampledLogger(log, 1, 10);
+
+    // Room ids become directory names; overflow instances are "ROOMID~2"
+    private static final Pattern SAFE_ROOM_ID = Pattern.compile("[A-Za-z0-9_~-]{1,64}");
+    private static final int BATCH_SIZE = 512;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.journal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${game.journal.dir:journal}")
+    private String directory = "journal";
+
+    @Value("${game.journal.segment-bytes:8388608}")
+    private long segmentBytes = 8388608;
+
+    @Value("${game.journal.queue-capacity:8192}")
+    private int queueCapacity = 8192;
+
+    // Mapped segments are forced to disk at most this often
+    @Value("${game.journal.flush-interval-ms:1000}")
+    private long flushIntervalMs = 1000;
+
+    private BlockingQueue<Entry> queue;
+    private final Queue<String> closedRooms = new ConcurrentLinkedQueue<>();
+    // Owned by the writer thread
+    private final Map<String, JournalSegmentWriter> writers = new HashMap<>();
+    private final List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+    private long lastFlush;
+
+    private final AtomicLong framesWritten = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        if (!enabled) {
+            return;
+        }
+        if (meterRegistry != null) {
+            FunctionCounter.builder("game.journal.frames", framesWritten, AtomicLong::get)
+                    .tag("result", "written")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.journal.frames", framesDropped, AtomicLong::get)
+                    .tag("result", "dropped")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.journal.bytes", bytesWritten, AtomicLong::get)
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.journal.write.failures", writeFailures, AtomicLong::get)
+                    .register(meterRegistry);
+            Gauge.builder("game.journal.queue", queue, BlockingQueue::size)
+                    .register(meterRegistry);
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "room-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("Journaling rooms to {}", getDirectory().toAbsolutePath());
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Path getDirectory() {
+        return Path.of(directory);
+    }
+
+    /**
+     * Queues a frame of {@code roomId} without blocking. Called on the room's
+     * event loop, in tick order.
+     */
+    public void record(String roomId, JournalFrame frame) {
+        if (!enabled || !SAFE_ROOM_ID.matcher(roomId).matches()) {
+            return;
+        }
+        if (!queue.offer(new Entry(roomId, frame))) {
+            framesDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Finishes the room's current segment once its queued frames are written.
+     */
+    public void closeRoom(String roomId) {
+        if (enabled) {
+            closedRooms.add(roomId);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                Entry first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                }
+                drainQueue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeAll();
+        }
+    }
+
+    // Runs on the writer thread: writes the queued frames, then closes finished rooms
+    private void drainQueue() {
+        queue.drainTo(batch, BATCH_SIZE - batch.size());
+        for (Entry entry : batch) {
+            JournalSegmentWriter writer = writers.computeIfAbsent(entry.roomId,
+                    roomId -> new JournalSegmentWriter(getDirectory().resolve(roomId), segmentBytes));
+            try {
+                bytesWritten.addAndGet(writer.append(entry.frame));
+                framesWritten.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                // Start the room over in a fresh segment rather than writing a broken one
+                writeFailures.incrementAndGet();
+                writeFailureLog.atWarn().addKeyValue("roomId", entry.roomId).setCause(e).log("Journal write failed");
+                close(writers.remove(entry.roomId));
+            }
+        }
+        batch.clear();
+        String roomId;
+        while ((roomId = closedRooms.poll()) != null) {
+            close(writers.remove(roomId));
+        }
+        long now = System.currentTimeMillis();
+        if (now - lastFlush >= flushIntervalMs) {
+            lastFlush = now;
+            for (JournalSegmentWriter writer : writers.values()) {
+                writer.flush();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (JournalSegmentWriter writer : writers.values()) {
+            close(writer);
+        }
+        writers.clear();
+    }
+
+    private void close(JournalSegmentWriter writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Could not close journal segment: {}", e.getMessage());
+        }
+    }
+
+    public long getFramesWritten() {
+        return framesWritten.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    private static final class Entry {
+        private final String roomId;
+        private final JournalFrame frame;
+
+        private Entry(String roomId, JournalFrame frame) {
+            this.roomId = roomId;
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.map.MetaHive.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable-length integers: seven bits per byte, low bits first, high
+ * bit set on every byte but the last. Signed values are zigzag-encoded first so
+ * small negative deltas stay short too.
+ */
+final class VarInt {
+
+    private VarInt() {
+    }
+
+    static void putUnsigned(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void putSigned(ByteBuffer buffer, long value) {
+        putUnsigned(buffer, (value << 1) ^ (value >> 63));
+    }
+
+    static long getUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint at " + buffer.position());
+    }
+
+    static long getSigned(ByteBuffer buffer) {
+        long raw = getUnsigned(buffer);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static int sizeOfUnsigned(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
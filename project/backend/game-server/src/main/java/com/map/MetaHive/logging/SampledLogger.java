@@ -0,0 +1,67 @@
+package com.map.MetaHive.logging;
+
+import com.map.MetaHive.websocket.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate-limited view of a logger for events that can happen once per message or
+ * per tick, such as rejected moves or failing room tasks. Disabled levels cost
+ * one level check; beyond {@code perSecond} events (with bursts of up to
+ * {@code burst}) the events are only counted, and the next event that is logged
+ * carries that count as {@code suppressed}.
+ * <pre>
+ * rejectedLog.atWarn().addKeyValue("roomId", roomId).log("Room not found for movement");
+ * </pre>
+ */
+public final class SampledLogger {
+
+    private final Logger logger;
+    private final TokenBucket bucket;
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public SampledLogger(Logger logger, double perSecond, int burst) {
+        this.logger = logger;
+        this.bucket = new TokenBucket(perSecond, burst, System.nanoTime());
+    }
+
+    public LoggingEventBuilder atDebug() {
+        return sample(Level.DEBUG);
+    }
+
+    public LoggingEventBuilder atInfo() {
+        return sample(Level.INFO);
+    }
+
+    public LoggingEventBuilder atWarn() {
+        return sample(Level.WARN);
+    }
+
+    public LoggingEventBuilder atError() {
+        return sample(Level.ERROR);
+    }
+
+    private LoggingEventBuilder sample(Level level) {
+        if (!logger.isEnabledForLevel(level)) {
+            return NOPLoggingEventBuilder.singleton();
+        }
+        if (!bucket.tryAcquire(System.nanoTime())) {
+            suppressed.incrementAndGet();
+            return NOPLoggingEventBuilder.singleton();
+        }
+        LoggingEventBuilder event = logger.atLevel(level);
+        long dropped = suppressed.getAndSet(0);
+        if (dropped > 0) {
+            event.addKeyValue("suppressed", dropped);
+        }
+        return event;
+    }
+
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+}
@@ -1,6 +1,19 @@
 package com.map.MetaHive.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
 public class Player {
+    // Bits of dirtyFlags, set by setters when a broadcast field actually changes
+    public static final int DIRTY_POSITION = 1;
+    public static final int DIRTY_DIRECTION = 1 << 1;
+    public static final int DIRTY_ANIMATION = 1 << 2;
+    public static final int DIRTY_MOVING = 1 << 3;
+    public static final int DIRTY_USERNAME = 1 << 4;
+    public static final int DIRTY_ACK = 1 << 5;
+
     private String id;
     private String direction;
     private String username;
@@ -9,8 +22,33 @@ public class Player {
     private String color;
     private boolean isMoving;
     private String animation;
+    // Client clock when the sample was taken; orders inputs without a seq, never sent back
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private long timestamp;
+    // Room clock (Room#getTickTime) of the tick that last published this player's state
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long serverTime;
     private String roomId;
+    // Room-scoped int id used by the binary movement protocol, assigned on join
+    private int handle;
+    // Client input sequence number of a movement sample; only ever read from clients
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private long seq;
+    // Highest input sequence number the server has applied for this player; never taken from clients
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long ack;
+
+    // Fields changed since the room last published this player; never serialized
+    @JsonIgnore
+    private int dirtyFlags;
+
+    // Room clock of the last move the server accepted, for the speed limit
+    @JsonIgnore
+    private long lastMoveTime;
+
+    // STOMP session that registered this player, used for per-client sends
+    @JsonIgnore
+    private String sessionId;
 
     public Player() {
         // no-args constructor
@@ -29,28 +67,40 @@ public class Player {
         return direction;
     }
     public void setDirection(String direction) {
-        this.direction = direction;
+        if (!Objects.equals(this.direction, direction)) {
+            this.direction = direction;
+            dirtyFlags |= DIRTY_DIRECTION;
+        }
     }
 
     public String getUsername() {
         return username;
     }
     public void setUsername(String username) {
-        this.username = username;
+        if (!Objects.equals(this.username, username)) {
+            this.username = username;
+            dirtyFlags |= DIRTY_USERNAME;
+        }
     }
 
     public double getX() {
         return x;
     }
     public void setX(double x) {
-        this.x = x;
+        if (this.x != x) {
+            this.x = x;
+            dirtyFlags |= DIRTY_POSITION;
+        }
     }
 
     public double getY() {
         return y;
     }
     public void setY(double y) {
-        this.y = y;
+        if (this.y != y) {
+            this.y = y;
+            dirtyFlags |= DIRTY_POSITION;
+        }
     }
 
     public String getColor() {
@@ -64,14 +114,20 @@ public class Player {
         return isMoving;
     }
     public void setIsMoving(boolean isMoving) {
-        this.isMoving = isMoving;
+        if (this.isMoving != isMoving) {
+            this.isMoving = isMoving;
+            dirtyFlags |= DIRTY_MOVING;
+        }
     }
 
     public String getAnimation() {
         return animation;
     }
     public void setAnimation(String animation) {
-        this.animation = animation;
+        if (!Objects.equals(this.animation, animation)) {
+            this.animation = animation;
+            dirtyFlags |= DIRTY_ANIMATION;
+        }
     }
 
     public long getTimestamp() {
@@ -81,10 +137,80 @@ public class Player {
         this.timestamp = timestamp;
     }
 
+    public long getServerTime() {
+        return serverTime;
+    }
+    public void setServerTime(long serverTime) {
+        this.serverTime = serverTime;
+    }
+
     public String getRoomId() {
         return roomId;
     }
     public void setRoomId(String roomId) {
         this.roomId = roomId;
     }
+
+    @JsonIgnore
+    public String getSessionId() {
+        return sessionId;
+    }
+    @JsonIgnore
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public long getAck() {
+        return ack;
+    }
+    public void setAck(long ack) {
+        if (this.ack != ack) {
+            this.ack = ack;
+            dirtyFlags |= DIRTY_ACK;
+        }
+    }
+
+    @JsonIgnore
+    public long getLastMoveTime() {
+        return lastMoveTime;
+    }
+    @JsonIgnore
+    public void setLastMoveTime(long lastMoveTime) {
+        this.lastMoveTime = lastMoveTime;
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+    public void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    // Dirty tracking
+
+    @JsonIgnore
+    public int getDirtyFlags() {
+        return dirtyFlags;
+    }
+
+    @JsonIgnore
+    public boolean isDirty() {
+        return dirtyFlags != 0;
+    }
+
+    // Republishes the given fields even though they did not change, e.g. to correct a client
+    public void markDirty(int flags) {
+        dirtyFlags |= flags;
+    }
+
+    public void clearDirty() {
+        dirtyFlags = 0;
+    }
 }
@@ -0,0 +1,158 @@
+package com.map.MetaHive.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Struct-of-arrays view of a room's players. Player ids are interned to small
+ * int handles that index parallel primitive arrays, so iterating positions for
+ * a broadcast walks contiguous memory instead of chasing map entries and boxed
+ * objects. Handles freed by leaving players are reused, keeping them dense and
+ * bounded by the room's peak size. A freed handle only becomes reusable after
+ * {@link #recycleReleased()}, so within one tick a handle never refers to both a
+ * leaving and a joining player. Handle 0 is never assigned.
+ * Not thread-safe: owned by the room's event loop, like the rest of the tick state.
+ */
+public class PlayerStateStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> handlesById = new HashMap<>();
+    private String[] ids;
+    private float[] x;
+    private float[] y;
+    // Packed direction / moving bits, see BinaryMovementCodec
+    private byte[] state;
+    private boolean[] live;
+
+    private int[] freeHandles = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int[] releasedHandles = new int[INITIAL_CAPACITY];
+    private int releasedCount;
+    private int highWater;
+    private int size;
+
+    public PlayerStateStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the player's handle, interning the id on first use.
+     */
+    public int add(String playerId) {
+        Integer existing = handlesById.get(playerId);
+        if (existing != null) {
+            return existing;
+        }
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            handle = ++highWater;
+            if (handle >= ids.length) {
+                allocate(ids.length * 2);
+            }
+        }
+        handlesById.put(playerId, handle);
+        ids[handle] = playerId;
+        live[handle] = true;
+        size++;
+        return handle;
+    }
+
+    public boolean remove(String playerId) {
+        Integer handle = handlesById.remove(playerId);
+        if (handle == null) {
+            return false;
+        }
+        ids[handle] = null;
+        live[handle] = false;
+        x[handle] = 0;
+        y[handle] = 0;
+        state[handle] = 0;
+        if (releasedCount == releasedHandles.length) {
+            releasedHandles = Arrays.copyOf(releasedHandles, releasedHandles.length * 2);
+        }
+        releasedHandles[releasedCount++] = handle;
+        size--;
+        return true;
+    }
+
+    /**
+     * Makes handles released since the last call available for reuse.
+     */
+    public void recycleReleased() {
+        if (freeCount + releasedCount > freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, Math.max(freeHandles.length * 2, freeCount + releasedCount));
+        }
+        System.arraycopy(releasedHandles, 0, freeHandles, freeCount, releasedCount);
+        freeCount += releasedCount;
+        releasedCount = 0;
+    }
+
+    /**
+     * The handle for {@code playerId}, or 0 if it is not in the store.
+     */
+    public int handleOf(String playerId) {
+        Integer handle = handlesById.get(playerId);
+        return handle != null ? handle : 0;
+    }
+
+    public String idOf(int handle) {
+        return handle > 0 && handle <= highWater ? ids[handle] : null;
+    }
+
+    public boolean isLive(int handle) {
+        return handle > 0 && handle <= highWater && live[handle];
+    }
+
+    public void set(int handle, float x, float y, byte state) {
+        this.x[handle] = x;
+        this.y[handle] = y;
+        this.state[handle] = state;
+    }
+
+    public float x(int handle) {
+        return x[handle];
+    }
+
+    public float y(int handle) {
+        return y[handle];
+    }
+
+    public byte state(int handle) {
+        return state[handle];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Highest handle ever assigned; live handles are in {@code [1, highWater]}.
+     */
+    public int highWater() {
+        return highWater;
+    }
+
+    /**
+     * Approximate retained heap: the column arrays at their current capacity plus
+     * the id index.
+     */
+    public long estimateHeapBytes() {
+        long capacity = ids.length;
+        // ids reference + x + y + state + live per slot, then the two handle stacks
+        return capacity * (4 + 4 + 4 + 1 + 1)
+                + 4L * (freeHandles.length + releasedHandles.length)
+                + 48L * handlesById.size();
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new String[capacity] : Arrays.copyOf(ids, capacity);
+        x = x == null ? new float[capacity] : Arrays.copyOf(x, capacity);
+        y = y == null ? new float[capacity] : Arrays.copyOf(y, capacity);
+        state = state == null ? new byte[capacity] : Arrays.copyOf(state, capacity);
+        live = live == null ? new boolean[capacity] : Arrays.copyOf(live, capacity);
+    }
+}
@@ -0,0 +1,57 @@
+package com.map.MetaHive.model;
+
+/**
+ * A player entering or leaving a proximity group, see {@link ProximityGroups}.
+ */
+public class ProximityEvent {
+    public static final String ENTER = "enter";
+    public static final String LEAVE = "leave";
+
+    private String type;
+    private String groupId;
+    private String playerId;
+
+    public ProximityEvent() {
+        // no-args constructor
+    }
+
+    public ProximityEvent(String type, String groupId, String playerId) {
+        this.type = type;
+        this.groupId = groupId;
+        this.playerId = playerId;
+    }
+
+    public static ProximityEvent enter(String groupId, String playerId) {
+        return new ProximityEvent(ENTER, groupId, playerId);
+    }
+
+    public static ProximityEvent leave(String groupId, String playerId) {
+        return new ProximityEvent(LEAVE, groupId, playerId);
+    }
+
+    public String getType() {
+        return type;
+    }
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+    public void setGroupId(String groupId) {
+        this.groupId = groupId;
+    }
+
+    public String getPlayerId() {
+        return playerId;
+    }
+    public void setPlayerId(String playerId) {
+        this.playerId = playerId;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + groupId + " " + playerId;
+    }
+}
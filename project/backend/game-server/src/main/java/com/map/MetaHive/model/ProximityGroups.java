@@ -0,0 +1,271 @@
+package com.map.MetaHive.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Groups players standing near each other into conversations. Two players are
+ * linked once they come within {@code joinRadius} and stay linked until they are
+ * more than {@code leaveRadius} apart, so groups do not flap at the boundary; a
+ * group is a connected set of linked players, so a chain of neighbours shares
+ * one conversation.
+ * <p>
+ * Updates are incremental: only players that moved are looked up, in a spatial
+ * grid with cells of the join radius so a lookup visits at most nine small cells
+ * however large the room is. Merges join the smaller group into the larger one,
+ * and only groups that lost a link are checked for splits. {@link #update}
+ * reports a player only when its group changes. Not thread-safe: owned by the
+ * room's event loop.
+ */
+public class ProximityGroups {
+
+    private final double joinRadius;
+    private final double leaveRadius;
+    private final SpatialGrid grid;
+    private final Map<String, Set<String>> links = new HashMap<>();
+    private final Map<String, Group> groupOf = new HashMap<>();
+    private long nextGroupId;
+
+    // Per update: group of each touched player before the update, and groups that lost a link
+    private final Map<String, String> previousGroups = new LinkedHashMap<>();
+    private final Set<Group> splitCandidates = new HashSet<>();
+
+    public ProximityGroups(double joinRadius, double leaveRadius) {
+        if (joinRadius <= 0 || leaveRadius < joinRadius) {
+            throw new IllegalArgumentException("Need 0 < joinRadius <= leaveRadius: " + joinRadius + ", " + leaveRadius);
+        }
+        this.joinRadius = joinRadius;
+        this.leaveRadius = leaveRadius;
+        this.grid = new SpatialGrid(joinRadius);
+    }
+
+    /**
+     * Applies one tick of changes: players that joined or moved, and players that
+     * left. {@code players} must already reflect them.
+     *
+     * @return the membership changes, leaves before enters
+     */
+    public List<ProximityEvent> update(Collection<String> movedIds, Collection<String> leftIds,
+                                       Map<String, Player> players) {
+        for (String playerId : leftIds) {
+            grid.remove(playerId);
+            removePlayer(playerId);
+        }
+        for (String playerId : movedIds) {
+            Player player = players.get(playerId);
+            if (player != null) {
+                grid.update(playerId, player.getX(), player.getY());
+            }
+        }
+        for (String playerId : movedIds) {
+            Player player = players.get(playerId);
+            if (player != null) {
+                relink(player, players);
+            }
+        }
+        for (Group group : splitCandidates) {
+            split(group);
+        }
+        splitCandidates.clear();
+
+        List<ProximityEvent> leaves = new ArrayList<>();
+        List<ProximityEvent> enters = new ArrayList<>();
+        previousGroups.forEach((playerId, before) -> {
+            String after = getGroupId(playerId);
+            if (!Objects.equals(before, after)) {
+                if (before != null) {
+                    leaves.add(ProximityEvent.leave(before, playerId));
+                }
+                if (after != null) {
+                    enters.add(ProximityEvent.enter(after, playerId));
+                }
+            }
+        });
+        previousGroups.clear();
+        leaves.addAll(enters);
+        return leaves;
+    }
+
+    public String getGroupId(String playerId) {
+        Group group = groupOf.get(playerId);
+        return group != null ? group.id : null;
+    }
+
+    public Set<String> getMembers(String groupId) {
+        for (Group group : groupOf.values()) {
+            if (group.id.equals(groupId)) {
+                return Set.copyOf(group.members);
+            }
+        }
+        return Set.of();
+    }
+
+    /**
+     * Approximate retained heap of the links, groups and grid.
+     */
+    public long estimateHeapBytes() {
+        long linkCount = 0;
+        for (Set<String> neighbours : links.values()) {
+            linkCount += neighbours.size();
+        }
+        return links.size() * 96L + linkCount * 40L + groupOf.size() * 48L + grid.estimateHeapBytes();
+    }
+
+    public int getGroupCount() {
+        return new HashSet<>(groupOf.values()).size();
+    }
+
+    private void relink(Player player, Map<String, Player> players) {
+        String playerId = player.getId();
+        Set<String> neighbours = links.computeIfAbsent(playerId, id -> new HashSet<>());
+        // Links only break past the leave radius
+        for (String neighbourId : List.copyOf(neighbours)) {
+            Player neighbour = players.get(neighbourId);
+            if (neighbour == null || distanceSquared(player, neighbour) > leaveRadius * leaveRadius) {
+                unlink(playerId, neighbourId);
+            }
+        }
+        grid.query(player.getX(), player.getY(), joinRadius, otherId -> {
+            if (!otherId.equals(playerId) && !neighbours.contains(otherId) && players.containsKey(otherId)) {
+                link(playerId, otherId);
+            }
+        });
+    }
+
+    private void link(String a, String b) {
+        links.computeIfAbsent(a, id -> new HashSet<>()).add(b);
+        links.computeIfAbsent(b, id -> new HashSet<>()).add(a);
+        Group groupA = groupOf.get(a);
+        Group groupB = groupOf.get(b);
+        if (groupA == null && groupB == null) {
+            Group group = newGroup();
+            assign(a, group);
+            assign(b, group);
+        } else if (groupA == null) {
+            assign(a, groupB);
+        } else if (groupB == null) {
+            assign(b, groupA);
+        } else if (groupA != groupB) {
+            Group larger = groupA.members.size() >= groupB.members.size() ? groupA : groupB;
+            Group smaller = larger == groupA ? groupB : groupA;
+            for (String member : List.copyOf(smaller.members)) {
+                assign(member, larger);
+            }
+            // A pending split check of the merged group now applies to the larger one
+            if (splitCandidates.remove(smaller)) {
+                splitCandidates.add(larger);
+            }
+        }
+    }
+
+    private void unlink(String a, String b) {
+        Set<String> linksA = links.get(a);
+        if (linksA != null) {
+            linksA.remove(b);
+        }
+        Set<String> linksB = links.get(b);
+        if (linksB != null) {
+            linksB.remove(a);
+        }
+        Group group = groupOf.get(a);
+        if (group != null) {
+            splitCandidates.add(group);
+        }
+    }
+
+    private void removePlayer(String playerId) {
+        Set<String> neighbours = links.remove(playerId);
+        if (neighbours != null) {
+            for (String neighbourId : neighbours) {
+                Set<String> neighbourLinks = links.get(neighbourId);
+                if (neighbourLinks != null) {
+                    neighbourLinks.remove(playerId);
+                }
+            }
+        }
+        Group group = groupOf.get(playerId);
+        if (group != null) {
+            assign(playerId, null);
+            splitCandidates.add(group);
+        }
+    }
+
+    /**
+     * Recomputes the connected parts of a group that lost links. The largest part
+     * keeps the group id, other parts of two or more players get new groups and
+     * players left alone drop out of any group.
+     */
+    private void split(Group group) {
+        List<Set<String>> parts = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String start : group.members) {
+            if (!seen.add(start)) {
+                continue;
+            }
+            Set<String> part = new HashSet<>();
+            ArrayDeque<String> queue = new ArrayDeque<>();
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                String current = queue.poll();
+                part.add(current);
+                for (String next : links.getOrDefault(current, Set.of())) {
+                    if (group.members.contains(next) && seen.add(next)) {
+                        queue.add(next);
+                    }
+                }
+            }
+            parts.add(part);
+        }
+        parts.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        for (int i = 0; i < parts.size(); i++) {
+            Set<String> part = parts.get(i);
+            Group target = part.size() < 2 ? null : i == 0 ? group : newGroup();
+            if (target != group) {
+                for (String member : part) {
+                    assign(member, target);
+                }
+            }
+        }
+    }
+
+    private void assign(String playerId, Group group) {
+        Group current = groupOf.get(playerId);
+        previousGroups.putIfAbsent(playerId, current != null ? current.id : null);
+        if (current != null) {
+            current.members.remove(playerId);
+        }
+        if (group == null) {
+            groupOf.remove(playerId);
+        } else {
+            group.members.add(playerId);
+            groupOf.put(playerId, group);
+        }
+    }
+
+    private Group newGroup() {
+        return new Group("g" + (++nextGroupId));
+    }
+
+    private static double distanceSquared(Player a, Player b) {
+        double dx = a.getX() - b.getX();
+        double dy = a.getY() - b.getY();
+        return dx * dx + dy * dy;
+    }
+
+    private static final class Group {
+        private final String id;
+        private final Set<String> members = new HashSet<>();
+
+        private Group(String id) {
+            this.id = id;
+        }
+    }
+}
@@ -1,23 +1,133 @@
 package com.map.MetaHive.model;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Room {
+    public static final double DEFAULT_CELL_SIZE = 256;
+
+    // Overflow instances share the room's id with a "~n" suffix, e.g. ABC123~2
+    public static final char INSTANCE_SEPARATOR = '~';
+
+    public static final int DEFAULT_HISTORY_SIZE = 32;
+
+    // Rough per-object sizes for estimateHeapBytes(), assuming compressed oops
+    private static final long ROOM_OVERHEAD_BYTES = 2048;
+    // Player with its id, name, room, direction and animation strings plus map entries
+    private static final long PLAYER_BYTES = 512;
+    private static final long MOVE_SLOT_BYTES = 320;
+    private static final long INTEREST_ENTRY_BYTES = 48;
+
     private String id;
     private Map<String, Player> players;
     private long createdAt;
 
-    public Room(String id) {
+    /*
+     * Threading: players and everything below except the movement slots, the
+     * handle index and the tick task handle are written only by
+     * the room's event loop (see RoomEventLoop). The players map stays concurrent
+     * so other threads can read it; all other loop-owned state must not be
+     * touched elsewhere.
+     */
+
+    // Latest unprocessed movement per player id; newer samples overwrite older ones
+    private final Map<String, Player> pendingMoves = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedMoves = new AtomicLong();
+    private volatile ScheduledFuture<?> tickTask;
+    // Set while a tick is queued on the event loop so a slow room does not pile up ticks
+    private final AtomicBoolean tickPending = new AtomicBoolean();
+    // Fixed at construction, so the room is never visible with any other executor
+    private final Executor eventLoop;
+    private boolean closed;
+
+    // Sessions that get a keyframe of their own at the next tick: joining or reconnecting clients
+    private final Set<String> keyframeRequests = new LinkedHashSet<>();
+
+    // Membership changes since the last published snapshot
+    private final Set<String> joinedPlayerIds = new LinkedHashSet<>();
+    // Player id -> handle, kept so binary clients can be told which handles left
+    private final Map<String, Integer> leftPlayerHandles = new LinkedHashMap<>();
+    private long tickCount;
+    private long lastKeyframeTick;
+    // Origin of the room's monotonic clock, and that clock in milliseconds at the current tick
+    private final long clockOrigin = System.nanoTime();
+    private long tickTime;
+
+    // Current tick rate, chosen by the adaptive tick policy; read by the metrics publisher
+    private volatile int tickRateHz;
+    // Tick durations since the rate was last evaluated
+    private long windowTickNanos;
+    private int windowTicks;
+    private long windowStartedAt;
+
+    // Area-of-interest state
+    private SpatialGrid spatialGrid = new SpatialGrid(DEFAULT_CELL_SIZE);
+    // Conversation groups of nearby players; null when proximity grouping is disabled
+    private ProximityGroups proximityGroups;
+    private final Map<String, Set<String>> interestSets = new HashMap<>();
+
+    // Interns player ids to compact int handles and mirrors broadcast state in primitive arrays
+    private final PlayerStateStore stateStore = new PlayerStateStore();
+    // Concurrent: binary frames are resolved to players on inbound threads
+    private final Map<Integer, Player> playersByHandle = new ConcurrentHashMap<>();
+
+    // Recent authoritative states per player id, for client reconciliation
+    private final Map<String, StateHistory> histories = new HashMap<>();
+    private int historySize = DEFAULT_HISTORY_SIZE;
+
+    // Lifecycle bookkeeping, written on the event loop and read by the reaper and gauges
+    private volatile long lastOccupiedAt;
+    private volatile long estimatedHeapBytes = ROOM_OVERHEAD_BYTES;
+
+    public Room(String id, Executor eventLoop) {
         this.id = id;
+        this.eventLoop = eventLoop;
         this.players = new ConcurrentHashMap<>();
         this.createdAt = System.currentTimeMillis();
+        this.lastOccupiedAt = createdAt;
     }
 
     public String getId() {
         return id;
     }
 
+    public String getLogicalId() {
+        return logicalId(id);
+    }
+
+    public int getInstanceNumber() {
+        return instanceNumber(id);
+    }
+
+    /**
+     * Id of the {@code instance}-th instance of a logical room; instance 1 is the room itself.
+     */
+    public static String instanceId(String roomId, int instance) {
+        return instance <= 1 ? roomId : roomId + INSTANCE_SEPARATOR + instance;
+    }
+
+    public static String logicalId(String roomId) {
+        int separator = roomId.indexOf(INSTANCE_SEPARATOR);
+        return separator < 0 ? roomId : roomId.substring(0, separator);
+    }
+
+    public static int instanceNumber(String roomId) {
+        int separator = roomId.indexOf(INSTANCE_SEPARATOR);
+        return separator < 0 ? 1 : Integer.parseInt(roomId.substring(separator + 1));
+    }
+
     public Map<String, Player> getPlayers() {
         return players;
     }
@@ -27,14 +137,275 @@ public class Room {
     }
 
     public void addPlayer(Player player) {
+        player.setHandle(stateStore.add(player.getId()));
         players.put(player.getId(), player);
+        playersByHandle.put(player.getHandle(), player);
+        leftPlayerHandles.remove(player.getId());
+        joinedPlayerIds.add(player.getId());
+        histories.put(player.getId(), new StateHistory(historySize));
+        lastOccupiedAt = System.currentTimeMillis();
     }
 
     public void removePlayer(String playerId) {
-        players.remove(playerId);
+        Player removed = players.remove(playerId);
+        if (removed != null) {
+            playersByHandle.remove(removed.getHandle());
+            stateStore.remove(playerId);
+            histories.remove(playerId);
+            joinedPlayerIds.remove(playerId);
+            leftPlayerHandles.put(playerId, removed.getHandle());
+            lastOccupiedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Last time a player joined or left, or the creation time for a room nobody joined.
+     */
+    public long getLastOccupiedAt() {
+        return lastOccupiedAt;
+    }
+
+    /**
+     * Recomputes the room's approximate retained heap. Walks loop-owned state, so it
+     * must run on the room's event loop; {@link #getEstimatedHeapBytes()} is safe
+     * from any thread.
+     */
+    public long updateHeapEstimate() {
+        long interestEntries = 0;
+        long historyBytes = histories.size() * (long) historySize * 32;
+        for (Set<String> visible : interestSets.values()) {
+            interestEntries += visible.size() + 1;
+        }
+        estimatedHeapBytes = ROOM_OVERHEAD_BYTES
+                + players.size() * PLAYER_BYTES
+                + pendingMoves.size() * MOVE_SLOT_BYTES
+                + interestEntries * INTEREST_ENTRY_BYTES
+                + historyBytes
+                + spatialGrid.estimateHeapBytes()
+                + (proximityGroups != null ? proximityGroups.estimateHeapBytes() : 0)
+                + stateStore.estimateHeapBytes();
+        return estimatedHeapBytes;
+    }
+
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    public StateHistory getHistory(String playerId) {
+        return histories.get(playerId);
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public PlayerStateStore getStateStore() {
+        return stateStore;
+    }
+
+    public Player getPlayerByHandle(int handle) {
+        return playersByHandle.get(handle);
     }
 
     public boolean hasPlayer(String playerId) {
         return players.containsKey(playerId);
     }
+
+    // ---------------------- TICK STATE ----------------------
+
+    /**
+     * Stores the movement in the player's input slot, replacing an unprocessed
+     * older sample. Samples are ordered by input sequence number, or by timestamp
+     * for clients that do not send one; an older sample than the one already
+     * waiting is discarded, so reordered packets cannot move the player backwards.
+     */
+    public void submitMove(Player movement) {
+        pendingMoves.merge(movement.getId(), movement, (waiting, incoming) -> {
+            coalescedMoves.incrementAndGet();
+            return isNewer(incoming, waiting) ? incoming : waiting;
+        });
+    }
+
+    private static boolean isNewer(Player incoming, Player waiting) {
+        if (incoming.getSeq() > 0 && waiting.getSeq() > 0) {
+            return incoming.getSeq() >= waiting.getSeq();
+        }
+        return incoming.getTimestamp() >= waiting.getTimestamp();
+    }
+
+    /**
+     * Hands each player's latest pending movement to {@code consumer} and empties
+     * its slot. At most one sample per player is returned per call.
+     */
+    public void drainMoves(Consumer<Player> consumer) {
+        for (String playerId : pendingMoves.keySet()) {
+            Player movement = pendingMoves.remove(playerId);
+            if (movement != null) {
+                consumer.accept(movement);
+            }
+        }
+    }
+
+    /**
+     * Movement samples overwritten before a tick consumed them.
+     */
+    public long getCoalescedMoveCount() {
+        return coalescedMoves.get();
+    }
+
+    public void requestKeyframe(String sessionId) {
+        keyframeRequests.add(sessionId);
+    }
+
+    public List<String> drainKeyframeRequests() {
+        if (keyframeRequests.isEmpty()) {
+            return List.of();
+        }
+        List<String> drained = new ArrayList<>(keyframeRequests);
+        keyframeRequests.clear();
+        return drained;
+    }
+
+    public Executor getEventLoop() {
+        return eventLoop;
+    }
+
+    /**
+     * Claims the right to queue the next tick; released by {@link #tickStarted()}.
+     */
+    public boolean tryScheduleTick() {
+        return tickPending.compareAndSet(false, true);
+    }
+
+    public void tickStarted() {
+        tickPending.set(false);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public ScheduledFuture<?> getTickTask() {
+        return tickTask;
+    }
+
+    public void setTickTask(ScheduledFuture<?> tickTask) {
+        this.tickTask = tickTask;
+    }
+
+    /**
+     * Advances the room's tick counter and stamps the tick with the room's
+     * monotonic clock. Only called from the room's tick task.
+     */
+    public long nextTick() {
+        tickTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - clockOrigin);
+        return ++tickCount;
+    }
+
+    /**
+     * Milliseconds since the room was created at the start of the current tick.
+     * Unlike wall-clock time it never goes backwards, and unlike the tick count it
+     * stays proportional to time when the tick rate changes.
+     */
+    public long getTickTime() {
+        return tickTime;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public int getTickRateHz() {
+        return tickRateHz;
+    }
+
+    public void setTickRateHz(int tickRateHz) {
+        this.tickRateHz = tickRateHz;
+    }
+
+    public void recordTickDuration(long nanos) {
+        windowTickNanos += nanos;
+        windowTicks++;
+    }
+
+    /**
+     * Average tick duration since the last call as a fraction of the current tick
+     * period, or -1 if less than {@code windowNanos} has passed since then.
+     */
+    public double drainTickLoad(long now, long windowNanos) {
+        if (windowStartedAt == 0) {
+            windowStartedAt = now;
+        }
+        if (now - windowStartedAt < windowNanos) {
+            return -1;
+        }
+        double periodNanos = (double) TimeUnit.SECONDS.toNanos(1) / tickRateHz;
+        double load = windowTicks == 0 ? 0 : windowTickNanos / (double) windowTicks / periodNanos;
+        windowTickNanos = 0;
+        windowTicks = 0;
+        windowStartedAt = now;
+        return load;
+    }
+
+    public long getLastKeyframeTick() {
+        return lastKeyframeTick;
+    }
+
+    public void setLastKeyframeTick(long lastKeyframeTick) {
+        this.lastKeyframeTick = lastKeyframeTick;
+    }
+
+    public SpatialGrid getSpatialGrid() {
+        return spatialGrid;
+    }
+
+    public void setSpatialGrid(SpatialGrid spatialGrid) {
+        this.spatialGrid = spatialGrid;
+    }
+
+    public ProximityGroups getProximityGroups() {
+        return proximityGroups;
+    }
+
+    public void setProximityGroups(ProximityGroups proximityGroups) {
+        this.proximityGroups = proximityGroups;
+    }
+
+    /**
+     * Player ids the given viewer was last sent, or an empty set if none yet.
+     */
+    public Set<String> getInterestSet(String viewerId) {
+        return interestSets.getOrDefault(viewerId, Set.of());
+    }
+
+    /**
+     * Replaces the viewer's interest set and returns the replaced one, or null, so
+     * the caller can reuse it.
+     */
+    public Set<String> setInterestSet(String viewerId, Set<String> visiblePlayerIds) {
+        return interestSets.put(viewerId, visiblePlayerIds);
+    }
+
+    public void removeInterestSet(String viewerId) {
+        interestSets.remove(viewerId);
+    }
+
+    public List<String> drainJoinedPlayerIds() {
+        List<String> drained = new ArrayList<>(joinedPlayerIds);
+        joinedPlayerIds.clear();
+        return drained;
+    }
+
+    /**
+     * Players that left since the last call, as player id -> handle.
+     */
+    public Map<String, Integer> drainLeftPlayers() {
+        Map<String, Integer> drained = new LinkedHashMap<>(leftPlayerHandles);
+        leftPlayerHandles.clear();
+        return drained;
+    }
 }
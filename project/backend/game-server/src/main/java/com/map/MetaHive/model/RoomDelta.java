@@ -0,0 +1,89 @@
+package com.map.MetaHive.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+/**
+ * Incremental room update published between keyframes. Carries only players
+ * whose broadcast state changed since the previous tick, plus membership changes.
+ */
+public class RoomDelta {
+    private String roomId;
+    private long tick;
+    // Room clock at the tick, for client interpolation buffers
+    private long serverTime;
+    // True when the receiver should replace its player view instead of merging
+    private boolean keyframe;
+    private List<Player> joined;
+    private List<Player> updated;
+    private List<String> left;
+
+    public RoomDelta() {
+        // no-args constructor
+    }
+
+    public RoomDelta(String roomId, long tick, long serverTime,
+                     List<Player> joined, List<Player> updated, List<String> left) {
+        this.roomId = roomId;
+        this.tick = tick;
+        this.serverTime = serverTime;
+        this.joined = joined;
+        this.updated = updated;
+        this.left = left;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    public long getServerTime() {
+        return serverTime;
+    }
+    public void setServerTime(long serverTime) {
+        this.serverTime = serverTime;
+    }
+
+    public boolean isKeyframe() {
+        return keyframe;
+    }
+    public void setKeyframe(boolean keyframe) {
+        this.keyframe = keyframe;
+    }
+
+    public List<Player> getJoined() {
+        return joined;
+    }
+    public void setJoined(List<Player> joined) {
+        this.joined = joined;
+    }
+
+    public List<Player> getUpdated() {
+        return updated;
+    }
+    public void setUpdated(List<Player> updated) {
+        this.updated = updated;
+    }
+
+    public List<String> getLeft() {
+        return left;
+    }
+    public void setLeft(List<String> left) {
+        this.left = left;
+    }
+
+    @JsonIgnore
+    public boolean isEmpty() {
+        return joined.isEmpty() && updated.isEmpty() && left.isEmpty();
+    }
+}
@@ -0,0 +1,167 @@
+package com.map.MetaHive.model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Uniform-grid spatial hash over player positions. Entries only change buckets
+ * when a player crosses a cell boundary, so updates on small moves are O(1).
+ * Not thread-safe: a room's grid is only touched by that room's tick.
+ */
+public class SpatialGrid {
+
+    private final double cellSize;
+    private final Map<Long, Set<Entry>> cells = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public SpatialGrid(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Approximate retained heap of the entries and non-empty cells.
+     */
+    public long estimateHeapBytes() {
+        return entries.size() * 112L + cells.size() * 96L;
+    }
+
+    public boolean contains(String playerId) {
+        return entries.containsKey(playerId);
+    }
+
+    /**
+     * Inserts the player or moves it to its new position, re-bucketing only when
+     * the cell changed.
+     */
+    public void update(String playerId, double x, double y) {
+        long cell = cellKey(cellIndex(x), cellIndex(y));
+        Entry entry = entries.get(playerId);
+        if (entry == null) {
+            entry = new Entry(playerId);
+            entries.put(playerId, entry);
+        } else if (entry.cell != cell) {
+            removeFromCell(entry);
+        } else {
+            entry.x = x;
+            entry.y = y;
+            return;
+        }
+        entry.x = x;
+        entry.y = y;
+        entry.cell = cell;
+        cells.computeIfAbsent(cell, key -> new HashSet<>()).add(entry);
+    }
+
+    public void remove(String playerId) {
+        Entry entry = entries.remove(playerId);
+        if (entry != null) {
+            removeFromCell(entry);
+        }
+    }
+
+    /**
+     * Visits every player within {@code radius} of (x, y), including a player
+     * standing exactly at that point.
+     */
+    public void query(double x, double y, double radius, Consumer<String> visitor) {
+        int minX = cellIndex(x - radius);
+        int maxX = cellIndex(x + radius);
+        int minY = cellIndex(y - radius);
+        int maxY = cellIndex(y + radius);
+        double radiusSquared = radius * radius;
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                Set<Entry> bucket = cells.get(cellKey(cx, cy));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Entry entry : bucket) {
+                    double dx = entry.x - x;
+                    double dy = entry.y - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        visitor.accept(entry.playerId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the keys of the cells the given players are bucketed in to {@code cells}.
+     * Players not in the grid are skipped.
+     */
+    public void collectCells(Collection<String> playerIds, Set<Long> cells) {
+        for (String playerId : playerIds) {
+            Entry entry = entries.get(playerId);
+            if (entry != null) {
+                cells.add(entry.cell);
+            }
+        }
+    }
+
+    /**
+     * True if any of {@code cells} is among the cells a {@link #query} of
+     * {@code radius} around (x, y) would scan.
+     */
+    public boolean anyCellInRange(double x, double y, double radius, Set<Long> cells) {
+        if (cells.isEmpty()) {
+            return false;
+        }
+        int minX = cellIndex(x - radius);
+        int maxX = cellIndex(x + radius);
+        int minY = cellIndex(y - radius);
+        int maxY = cellIndex(y + radius);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                if (cells.contains(cellKey(cx, cy))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void removeFromCell(Entry entry) {
+        Set<Entry> bucket = cells.get(entry.cell);
+        if (bucket != null) {
+            bucket.remove(entry);
+            if (bucket.isEmpty()) {
+                cells.remove(entry.cell);
+            }
+        }
+    }
+
+    private int cellIndex(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static final class Entry {
+        private final String playerId;
+        private double x;
+        private double y;
+        private long cell;
+
+        private Entry(String playerId) {
+            this.playerId = playerId;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.map.MetaHive.model;
+
+/**
+ * Fixed-size ring of a player's recent authoritative states, one entry per tick
+ * in which the player changed. Each entry records the tick, the last input
+ * sequence number applied by then, and the resulting position, so a client can
+ * rewind to the state the server confirmed for one of its inputs and replay the
+ * inputs it sent after that. Written only by the room's event loop.
+ */
+public class StateHistory {
+
+    private final long[] ticks;
+    private final long[] seqs;
+    private final double[] xs;
+    private final double[] ys;
+    // Index the next entry is written to; the oldest entry once the ring is full
+    private int next;
+    private int size;
+
+    public StateHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        ticks = new long[capacity];
+        seqs = new long[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+    }
+
+    public void record(long tick, long seq, double x, double y) {
+        ticks[next] = tick;
+        seqs[next] = seq;
+        xs[next] = x;
+        ys[next] = y;
+        next = (next + 1) % ticks.length;
+        if (size < ticks.length) {
+            size++;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ticks.length;
+    }
+
+    // Entries are addressed oldest first: 0 is the oldest, size() - 1 the newest
+
+    public long tickAt(int index) {
+        return ticks[slot(index)];
+    }
+
+    public long seqAt(int index) {
+        return seqs[slot(index)];
+    }
+
+    public double xAt(int index) {
+        return xs[slot(index)];
+    }
+
+    public double yAt(int index) {
+        return ys[slot(index)];
+    }
+
+    /**
+     * Index of the newest entry whose acknowledged sequence is at most {@code seq},
+     * or -1 if every retained entry is newer, i.e. the input fell out of the window.
+     */
+    public int indexAtOrBefore(long seq) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (seqAt(i) <= seq) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + " out of " + size);
+        }
+        return (next - size + index + ticks.length) % ticks.length;
+    }
+}
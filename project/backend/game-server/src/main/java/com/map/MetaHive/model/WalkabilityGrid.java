@@ -0,0 +1,95 @@
+package com.map.MetaHive.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One bit per map tile telling whether a player may stand there, built from a
+ * Tiled map. A tile is blocked when its centre lies inside one of the
+ * rectangles of the map's boundary object layer, which is what the client
+ * collides against; everything outside the map is blocked too. Lookups are a
+ * division and a bit test, so they can run on every move without allocating.
+ */
+public class WalkabilityGrid {
+
+    private final int columns;
+    private final int rows;
+    private final double tileWidth;
+    private final double tileHeight;
+    private final long[] blocked;
+
+    public WalkabilityGrid(int columns, int rows, double tileWidth, double tileHeight) {
+        if (columns <= 0 || rows <= 0 || tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Invalid map size " + columns + "x" + rows
+                    + " with tiles of " + tileWidth + "x" + tileHeight);
+        }
+        this.columns = columns;
+        this.rows = rows;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.blocked = new long[(columns * rows + 63) >>> 6];
+    }
+
+    /**
+     * Builds the grid of a Tiled JSON map from the rectangles of the object layer
+     * named {@code boundaryLayer}.
+     */
+    public static WalkabilityGrid fromTiled(JsonNode map, String boundaryLayer) {
+        WalkabilityGrid grid = new WalkabilityGrid(map.path("width").asInt(), map.path("height").asInt(),
+                map.path("tilewidth").asDouble(), map.path("tileheight").asDouble());
+        for (JsonNode layer : map.path("layers")) {
+            if (!"objectgroup".equals(layer.path("type").asText()) || !boundaryLayer.equals(layer.path("name").asText())) {
+                continue;
+            }
+            for (JsonNode object : layer.path("objects")) {
+                grid.blockRect(object.path("x").asDouble(), object.path("y").asDouble(),
+                        object.path("width").asDouble(), object.path("height").asDouble());
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Blocks every tile whose centre lies inside the given pixel rectangle.
+     */
+    public void blockRect(double x, double y, double width, double height) {
+        int firstColumn = Math.max(0, (int) Math.ceil(x / tileWidth - 0.5));
+        int lastColumn = Math.min(columns - 1, (int) Math.floor((x + width) / tileWidth - 0.5));
+        int firstRow = Math.max(0, (int) Math.ceil(y / tileHeight - 0.5));
+        int lastRow = Math.min(rows - 1, (int) Math.floor((y + height) / tileHeight - 0.5));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int index = row * columns + column;
+                blocked[index >>> 6] |= 1L << index;
+            }
+        }
+    }
+
+    public boolean isWalkable(double x, double y) {
+        if (!(x >= 0 && y >= 0)) {
+            return false;
+        }
+        int column = (int) (x / tileWidth);
+        int row = (int) (y / tileHeight);
+        if (column >= columns || row >= rows) {
+            return false;
+        }
+        int index = row * columns + column;
+        return (blocked[index >>> 6] & (1L << index)) == 0;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBlockedTileCount() {
+        int count = 0;
+        for (long word : blocked) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,177 @@
+package com.map.MetaHive.protocol;
+
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.PlayerStateStore;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fixed-layout binary frames for the opt-in movement protocol. All values are
+ * big-endian; positions are {@link FixedPoint} values (quarter pixels) in a
+ * signed 16-bit range.
+ *
+ * <pre>
+ * MOVE  (client -> server, 10 bytes)
+ *   u8 type=1 | i32 handle | i16 x | i16 y | u8 state
+ *
+ * DELTA (server -> client, 11 + 9n + 2 + 4m bytes)
+ *   u8 type=2 | u32 tick | u32 serverTime | u16 n | n * (i32 handle | i16 x | i16 y | u8 state)
+ *   | u16 m | m * i32 leftHandle
+ *
+ * state = direction (bits 0-1: down, up, left, right) | moving (bit 2)
+ * </pre>
+ *
+ * The animation is not transmitted: clients derive {@code run-<dir>} or
+ * {@code idle-<dir>} from the moving bit, which is what the web client sends anyway.
+ * {@code serverTime} is the room's monotonic clock in milliseconds at the tick.
+ */
+public final class BinaryMovementCodec {
+
+    public static final byte FRAME_MOVE = 1;
+    public static final byte FRAME_DELTA = 2;
+
+    public static final int MOVE_FRAME_SIZE = 10;
+    public static final int PLAYER_RECORD_SIZE = 9;
+    private static final int DELTA_HEADER_SIZE = 11;
+
+    private static final String[] DIRECTIONS = {"down", "up", "left", "right"};
+    private static final int DIRECTION_MASK = 0b11;
+    private static final int MOVING_BIT = 1 << 2;
+
+    private BinaryMovementCodec() {
+    }
+
+    public static byte[] encodeMove(Player player) {
+        ByteBuffer buffer = ByteBuffer.allocate(MOVE_FRAME_SIZE);
+        buffer.put(FRAME_MOVE);
+        putRecord(buffer, player);
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a MOVE frame into {@code target}, setting handle, position,
+     * direction, moving flag and the derived animation.
+     *
+     * @return false if the frame is not a well-formed MOVE frame
+     */
+    public static boolean decodeMove(byte[] frame, Player target) {
+        if (frame == null || frame.length != MOVE_FRAME_SIZE || frame[0] != FRAME_MOVE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame, 1, MOVE_FRAME_SIZE - 1);
+        target.setHandle(buffer.getInt());
+        target.setX(FixedPoint.toDouble(buffer.getShort()));
+        target.setY(FixedPoint.toDouble(buffer.getShort()));
+        applyState(buffer.get(), target);
+        return true;
+    }
+
+    public static byte[] encodeDelta(long tick, long serverTime, Collection<Player> updated,
+                                     Collection<Integer> leftHandles) {
+        ByteBuffer buffer = ByteBuffer.allocate(
+                DELTA_HEADER_SIZE + PLAYER_RECORD_SIZE * updated.size() + 2 + 4 * leftHandles.size());
+        buffer.put(FRAME_DELTA);
+        buffer.putInt((int) tick);
+        buffer.putInt((int) serverTime);
+        buffer.putShort((short) updated.size());
+        for (Player player : updated) {
+            putRecord(buffer, player);
+        }
+        buffer.putShort((short) leftHandles.size());
+        for (int handle : leftHandles) {
+            buffer.putInt(handle);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a DELTA frame straight from the room's primitive state arrays for
+     * the first {@code count} entries of {@code handles}.
+     */
+    public static byte[] encodeDelta(long tick, long serverTime, PlayerStateStore store, int[] handles, int count,
+                                     Collection<Integer> leftHandles) {
+        ByteBuffer buffer = ByteBuffer.allocate(
+                DELTA_HEADER_SIZE + PLAYER_RECORD_SIZE * count + 2 + 4 * leftHandles.size());
+        buffer.put(FRAME_DELTA);
+        buffer.putInt((int) tick);
+        buffer.putInt((int) serverTime);
+        buffer.putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            int handle = handles[i];
+            buffer.putInt(handle);
+            buffer.putShort(FixedPoint.toFixed16(store.x(handle)));
+            buffer.putShort(FixedPoint.toFixed16(store.y(handle)));
+            buffer.put(store.state(handle));
+        }
+        buffer.putShort((short) leftHandles.size());
+        for (int handle : leftHandles) {
+            buffer.putInt(handle);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads the player records of a DELTA frame. Used by tests and tooling; the
+     * server itself only encodes deltas.
+     */
+    public static void decodeDelta(byte[] frame, List<Player> updated, List<Integer> leftHandles) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        if (buffer.get() != FRAME_DELTA) {
+            throw new IllegalArgumentException("Not a DELTA frame");
+        }
+        buffer.getInt();
+        buffer.getInt();
+        int count = Short.toUnsignedInt(buffer.getShort());
+        for (int i = 0; i < count; i++) {
+            Player player = new Player();
+            player.setHandle(buffer.getInt());
+            player.setX(FixedPoint.toDouble(buffer.getShort()));
+            player.setY(FixedPoint.toDouble(buffer.getShort()));
+            applyState(buffer.get(), player);
+            updated.add(player);
+        }
+        int left = Short.toUnsignedInt(buffer.getShort());
+        for (int i = 0; i < left; i++) {
+            leftHandles.add(buffer.getInt());
+        }
+    }
+
+    private static void putRecord(ByteBuffer buffer, Player player) {
+        buffer.putInt(player.getHandle());
+        buffer.putShort(FixedPoint.toFixed16(player.getX()));
+        buffer.putShort(FixedPoint.toFixed16(player.getY()));
+        buffer.put(encodeState(player));
+    }
+
+    public static byte encodeState(Player player) {
+        int state = directionCode(player.getDirection());
+        if (player.getIsMoving()) {
+            state |= MOVING_BIT;
+        }
+        return (byte) state;
+    }
+
+    /**
+     * Sets direction, moving flag and the derived animation from packed state bits.
+     */
+    public static void applyState(byte state, Player target) {
+        String direction = DIRECTIONS[state & DIRECTION_MASK];
+        boolean moving = (state & MOVING_BIT) != 0;
+        target.setDirection(direction);
+        target.setIsMoving(moving);
+        target.setAnimation((moving ? "run-" : "idle-") + direction);
+    }
+
+    private static int directionCode(String direction) {
+        if (direction != null) {
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if (DIRECTIONS[i].equals(direction)) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,36 @@
+package com.map.MetaHive.protocol;
+
+/**
+ * Fixed-point representation of positions. Authoritative positions are snapped
+ * to multiples of 1/{@link #SCALE} pixel when a move is applied, so JSON
+ * snapshots carry at most two decimals and binary frames carry the same value
+ * exactly as a scaled integer.
+ */
+public final class FixedPoint {
+
+    public static final int FRACTION_BITS = 2;
+    public static final int SCALE = 1 << FRACTION_BITS;
+
+    private FixedPoint() {
+    }
+
+    public static int toFixed(double value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(value * SCALE)));
+    }
+
+    /**
+     * Like {@link #toFixed(double)}, clamped to the signed 16-bit range used by
+     * binary frames (about +/-8192 pixels).
+     */
+    public static short toFixed16(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, toFixed(value)));
+    }
+
+    public static double toDouble(int fixed) {
+        return (double) fixed / SCALE;
+    }
+
+    public static double quantize(double value) {
+        return toDouble(toFixed(value));
+    }
+}
@@ -0,0 +1,164 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.model.Room;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses each room's tick (and therefore broadcast) rate from its load:
+ * <ul>
+ *   <li>the fraction of players moving sets the base rate between the bounds, so
+ *   a room where everyone is standing still ticks at the minimum;</li>
+ *   <li>past {@code crowded-players} the rate falls with the square root of the
+ *   player count, because per-tick fan-out grows with its square;</li>
+ *   <li>back-pressure, i.e. a session of the room with a deep outbound queue or
+ *   ticks using more than half of their period, halves the current rate.</li>
+ * </ul>
+ * Without back-pressure the rate rises by at most {@code max-step-hz} per
+ * evaluation, and changes smaller than that step are ignored, so rooms do not
+ * flap between two rates. The slowest and fastest room rates are published as
+ * gauges; each room's rate only with {@code game.metrics.per-room.enabled}.
+ */
+@Component
+public class AdaptiveTickPolicy {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.tick.adaptive.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${game.tick.adaptive.min-rate-hz:5}")
+    private int minRateHz = 5;
+
+    @Value("${game.tick.adaptive.max-rate-hz:30}")
+    private int maxRateHz = 30;
+
+    @Value("${game.tick.adaptive.max-step-hz:5}")
+    private int maxStepHz = 5;
+
+    @Value("${game.tick.adaptive.crowded-players:50}")
+    private int crowdedPlayers = 50;
+
+    // Queued outbound messages for one session that count as back-pressure
+    @Value("${game.tick.adaptive.queue-pressure:16}")
+    private int queuePressure = 16;
+
+    @Value("${game.tick.adaptive.evaluate-every-ms:1000}")
+    private long evaluateEveryMs = 1000;
+
+    @Value("${game.metrics.per-room.enabled:false}")
+    private boolean perRoomMetrics = false;
+
+    private final AtomicLong rateIncreases = new AtomicLong();
+    private final AtomicLong rateDecreases = new AtomicLong();
+    private final AtomicLong pressuredDecisions = new AtomicLong();
+    private final AtomicInteger minRoomRateHz = new AtomicInteger();
+    private final AtomicInteger maxRoomRateHz = new AtomicInteger();
+    private MultiGauge roomTickRates;
+
+    @PostConstruct
+    void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("game.rooms.tick.rate.min", minRoomRateHz, AtomicInteger::get)
+                .description("Tick and broadcast rate of the slowest room")
+                .baseUnit("hertz")
+                .register(meterRegistry);
+        Gauge.builder("game.rooms.tick.rate.max", maxRoomRateHz, AtomicInteger::get)
+                .description("Tick and broadcast rate of the fastest room")
+                .baseUnit("hertz")
+                .register(meterRegistry);
+        if (perRoomMetrics) {
+            roomTickRates = MultiGauge.builder("game.room.tick.rate")
+                    .description("Current tick and broadcast rate per room")
+                    .baseUnit("hertz")
+                    .register(meterRegistry);
+        }
+        FunctionCounter.builder("game.tick.rate.changes", rateIncreases, AtomicLong::get)
+                .tag("direction", "up")
+                .register(meterRegistry);
+        FunctionCounter.builder("game.tick.rate.changes", rateDecreases, AtomicLong::get)
+                .tag("direction", "down")
+                .register(meterRegistry);
+        FunctionCounter.builder("game.tick.rate.pressured", pressuredDecisions, AtomicLong::get)
+                .description("Evaluations that found outbound or tick back-pressure")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param currentRateHz rate the room ticks at now
+     * @param players       players in the room
+     * @param moving        players currently moving
+     * @param maxQueued     deepest outbound queue among the room's sessions
+     * @param tickLoad      average tick duration as a fraction of the tick period
+     * @return the rate the room should tick at, within the configured bounds
+     */
+    public int targetRateHz(int currentRateHz, int players, int moving, int maxQueued, double tickLoad) {
+        double target = minRateHz;
+        if (players > 0) {
+            target += (maxRateHz - minRateHz) * ((double) moving / players);
+            if (players > crowdedPlayers) {
+                target *= Math.sqrt((double) crowdedPlayers / players);
+            }
+        }
+        boolean pressured = maxQueued >= queuePressure || tickLoad > 0.5;
+        if (pressured) {
+            pressuredDecisions.incrementAndGet();
+            target = Math.min(target, currentRateHz / 2.0);
+        } else {
+            target = Math.min(target, currentRateHz + maxStepHz);
+        }
+        int rate = (int) Math.max(minRateHz, Math.min(maxRateHz, Math.round(target)));
+        if (!pressured && Math.abs(rate - currentRateHz) < maxStepHz && rate != minRateHz && rate != maxRateHz) {
+            return currentRateHz;
+        }
+        if (rate > currentRateHz) {
+            rateIncreases.incrementAndGet();
+        } else if (rate < currentRateHz) {
+            rateDecreases.incrementAndGet();
+        }
+        return rate;
+    }
+
+    public void publish(Collection<Room> rooms) {
+        int min = Integer.MAX_VALUE;
+        int max = 0;
+        for (Room room : rooms) {
+            min = Math.min(min, room.getTickRateHz());
+            max = Math.max(max, room.getTickRateHz());
+        }
+        minRoomRateHz.set(rooms.isEmpty() ? 0 : min);
+        maxRoomRateHz.set(max);
+        if (roomTickRates == null) {
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(rooms.size());
+        for (Room room : rooms) {
+            rows.add(MultiGauge.Row.of(Tags.of("room", room.getId()), room.getTickRateHz()));
+        }
+        roomTickRates.register(rows, true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getEvaluateEveryMs() {
+        return evaluateEveryMs;
+    }
+}
@@ -1,12 +1,46 @@
 package com.map.MetaHive.service;
 
+import com.map.MetaHive.cluster.RoomPlacement;
+import com.map.MetaHive.journal.JournalFrame;
+import com.map.MetaHive.journal.RoomJournal;
+import com.map.MetaHive.logging.SampledLogger;
 import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.PlayerStateStore;
+import com.map.MetaHive.model.ProximityEvent;
+import com.map.MetaHive.model.ProximityGroups;
 import com.map.MetaHive.model.Room;
+import com.map.MetaHive.model.RoomDelta;
+import com.map.MetaHive.model.SpatialGrid;
+import com.map.MetaHive.model.StateHistory;
+import com.map.MetaHive.protocol.BinaryMovementCodec;
+import com.map.MetaHive.protocol.FixedPoint;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class GameSessionService {
@@ -14,22 +48,153 @@ public class GameSessionService {
     private final Map<String, Room> activeRooms = new ConcurrentHashMap<>();
     private static final int ROOM_ID_LENGTH = 6;
     private static final String ROOM_ID_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final int MAX_ROOM_ID_ATTEMPTS = 1000;
 
+    private static final Logger log = LoggerFactory.getLogger(GameSessionService.class);
+    // A failing room can fail every tick; every room shares this budget
+    private static final SampledLogger tickFailureLog = new SampledLogger(log, 1, 10);
+
+    // Spawn used when the map defines none, see MovementValidator#getSpawnX
+    public static final double DEFAULT_SPAWN_X = 400;
+    public static final double DEFAULT_SPAWN_Y = 300;
+
+    @Autowired
+    private RoomBroadcaster roomBroadcaster;
+
+    @Autowired
+    private RoomPlacement roomPlacement;
+
+    @Autowired
+    private SessionRegistry sessionRegistry;
+
+    @Autowired
+    private RoomLifecycleManager roomLifecycle;
+
+    @Autowired
+    private AdaptiveTickPolicy tickPolicy;
+
+    @Autowired
+    private OutboundFlowControl outboundFlowControl;
+
+    @Autowired
+    private MovementValidator movementValidator;
+
+    @Autowired
+    private RoomJournal roomJournal;
+
+    // Simulation ticks per second a room starts at; the adaptive tick policy moves it from there
+    @Value("${game.tick.rate-hz:20}")
+    private int tickRateHz = 20;
+
+    @Value("${game.tick.threads:2}")
+    private int tickThreads = 2;
+
+    // A full snapshot is published at least this often so late joiners and lossy clients resync
+    @Value("${game.snapshot.keyframe-interval-ticks:100}")
+    private int keyframeIntervalTicks = 100;
+
+    // When enabled, each client only receives players within aoi.radius of its own player
+    @Value("${game.aoi.enabled:false}")
+    private boolean aoiEnabled;
+
+    @Value("${game.aoi.radius:640}")
+    private double aoiRadius = 640;
+
+    @Value("${game.aoi.cell-size:" + Room.DEFAULT_CELL_SIZE + "}")
+    private double aoiCellSize = Room.DEFAULT_CELL_SIZE;
+
+    // Players within radius of each other form a conversation group, until they are leave-radius apart
+    @Value("${game.proximity.enabled:true}")
+    private boolean proximityEnabled = true;
+
+    @Value("${game.proximity.radius:100}")
+    private double proximityRadius = 100;
+
+    @Value("${game.proximity.leave-radius:120}")
+    private double proximityLeaveRadius = 120;
+
+    // Authoritative states kept per player for client reconciliation
+    @Value("${game.reconcile.history-size:" + Room.DEFAULT_HISTORY_SIZE + "}")
+    private int historySize = Room.DEFAULT_HISTORY_SIZE;
+
+    // Worker threads shared by all room event loops
+    @Value("${game.room.worker-threads:0}")
+    private int roomWorkerThreads;
+
+    // Players whose session has been silent this long are evicted as ghosts
+    @Value("${game.session.idle-timeout-ms:30000}")
+    private long sessionIdleTimeoutMs = 30000;
+
+    @Value("${game.session.sweep-interval-ms:1000}")
+    private long sessionSweepIntervalMs = 1000;
+
+    // Only enqueues ticks onto room event loops; the ticks themselves run on roomWorkers
+    private ScheduledExecutorService tickScheduler;
+    private ExecutorService roomWorkerPool;
+    private Executor roomWorkers;
+
+    @PostConstruct
+    void startTickScheduler() {
+        tickScheduler = Executors.newScheduledThreadPool(tickThreads, daemonThreads("room-tick-"));
+        int workers = roomWorkerThreads > 0 ? roomWorkerThreads : Runtime.getRuntime().availableProcessors();
+        roomWorkerPool = Executors.newFixedThreadPool(workers, daemonThreads("room-worker-"));
+        roomWorkers = roomWorkerPool;
+        tickScheduler.scheduleWithFixedDelay(this::evictStaleSessions,
+                sessionSweepIntervalMs, sessionSweepIntervalMs, TimeUnit.MILLISECONDS);
+        long reapIntervalMs = roomLifecycle.getReapIntervalMs();
+        tickScheduler.scheduleWithFixedDelay(this::reapIdleRooms, reapIntervalMs, reapIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopTickScheduler() {
+        tickScheduler.shutdownNow();
+        roomWorkerPool.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates a room with a fresh id owned by this node, or returns null when the
+     * node is at its room limit.
+     */
     public String createRoom() {
-        // Generate a short ID for the room
-        String roomId;
-        do {
-            roomId = generateRoomId();
-        } while (activeRooms.containsKey(roomId));
-
-        System.out.println("Room created with ID: " + roomId);
-        Room newRoom = new Room(roomId);
-        activeRooms.put(roomId, newRoom);
+        if (!roomLifecycle.tryReserveRoom()) {
+            log.warn("Room limit reached, not creating a room");
+            return null;
+        }
+        // Generate a short ID for the room, retrying until it hashes to this node and is unused
+        String roomId = null;
+        Room newRoom = null;
+        for (int attempt = 0; attempt < MAX_ROOM_ID_ATTEMPTS && newRoom == null; attempt++) {
+            String candidate = generateRoomId();
+            if (roomPlacement.isLocal(candidate)) {
+                Room room = newRoom(candidate);
+                if (activeRooms.putIfAbsent(candidate, room) == null) {
+                    roomId = candidate;
+                    newRoom = room;
+                }
+            }
+        }
+        if (newRoom == null) {
+            roomLifecycle.releaseRoom();
+            log.warn("No free room ID for this node after {} attempts", MAX_ROOM_ID_ATTEMPTS);
+            return null;
+        }
+
+        log.info("Room created with ID: {}", roomId);
+        startTicking(newRoom);
         return roomId;
     }
 
     private String generateRoomId() {
-        Random random = new Random();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < ROOM_ID_LENGTH; i++) {
             int index = random.nextInt(ROOM_ID_CHARS.length());
@@ -41,35 +206,230 @@ public class GameSessionService {
     public boolean joinRoom(String roomId, Player player) {
         Room room = activeRooms.get(roomId);
         if (room != null) {
-            room.addPlayer(player);
-            System.out.println("Player " + player.getUsername() + " joined room " + roomId);
+            room.getEventLoop().execute(() -> {
+                if (!room.isClosed()) {
+                    room.addPlayer(player);
+                    log.debug("Player {} joined room {}", player.getUsername(), roomId);
+                }
+            });
             return true;
         }
-        System.out.println("Failed to join room: " + roomId + " (Room does not exist)");
+        log.debug("Failed to join room: {} (Room does not exist)", roomId);
         return false;
     }
 
-    public void addRoom(String roomId, Room room) {
-        activeRooms.put(roomId, room);
-        System.out.println("Added new room with ID: " + roomId);
+    /**
+     * Returns the room with the given id, creating it if needed. Returns null when
+     * the room does not exist and the node is at its room limit.
+     */
+    public Room getOrCreateRoom(String roomId) {
+        Room room = activeRooms.get(roomId);
+        if (room != null) {
+            return room;
+        }
+        if (!roomLifecycle.tryReserveRoom()) {
+            log.warn("Room limit reached, not creating room {}", roomId);
+            return null;
+        }
+        Room newRoom = newRoom(roomId);
+        Room existing = activeRooms.putIfAbsent(roomId, newRoom);
+        if (existing != null) {
+            roomLifecycle.releaseRoom();
+            return existing;
+        }
+        startTicking(newRoom);
+        log.info("Added new room with ID: {}", roomId);
+        return newRoom;
+    }
+
+    /**
+     * Chooses the instance of a logical room a joining player should enter. Once
+     * an instance reaches the instance threshold, new joiners overflow into the
+     * next instance ({@code roomId~2}, {@code roomId~3}, ...), so broadcast cost
+     * stays bounded per instance. Related players are kept together: a player
+     * already in an instance goes back to it, and a player joining a companion
+     * goes to the companion's instance while it is below the hard cap. Otherwise
+     * the lowest-numbered instance with space wins. Returns null when every
+     * instance is full and no new one can be created.
+     * <p>
+     * Occupancy is read outside the room loops, so the threshold is a soft limit;
+     * the hard player cap is still enforced when the player is added.
+     */
+    public Room joinInstance(String roomId, String playerId, String companionId) {
+        Room companionInstance = null;
+        Room firstWithSpace = null;
+        Room leastCrowded = null;
+        int firstFreeNumber = 0;
+        for (int n = 1; n <= roomLifecycle.getMaxInstances(); n++) {
+            Room instance = activeRooms.get(Room.instanceId(roomId, n));
+            if (instance == null) {
+                if (firstFreeNumber == 0) {
+                    firstFreeNumber = n;
+                }
+                continue;
+            }
+            if (playerId != null && instance.hasPlayer(playerId)) {
+                return instance;
+            }
+            if (companionInstance == null && companionId != null
+                    && instance.hasPlayer(companionId) && !roomLifecycle.isFull(instance)) {
+                companionInstance = instance;
+            }
+            if (firstWithSpace == null && !roomLifecycle.isCrowded(instance)) {
+                firstWithSpace = instance;
+            }
+            if (leastCrowded == null || instance.getPlayers().size() < leastCrowded.getPlayers().size()) {
+                leastCrowded = instance;
+            }
+        }
+        if (companionInstance != null) {
+            return companionInstance;
+        }
+        if (firstWithSpace != null) {
+            return firstWithSpace;
+        }
+        if (firstFreeNumber != 0) {
+            Room created = getOrCreateRoom(Room.instanceId(roomId, firstFreeNumber));
+            if (created != null) {
+                if (firstFreeNumber > 1) {
+                    log.info("Room {} is crowded, opened instance {}", roomId, created.getId());
+                }
+                return created;
+            }
+        }
+        // No new instance possible: squeeze into the emptiest one below the hard cap
+        return leastCrowded != null && !roomLifecycle.isFull(leastCrowded) ? leastCrowded : null;
     }
 
     public void addPlayer(Player player) {
         Room room = activeRooms.get(player.getRoomId());
         if (room != null) {
-            System.out.println("Adding player to room " + player.getRoomId() + ": " + player.getUsername());
-            room.addPlayer(player);
-            System.out.println("Players now in room: " + room.getPlayers().size());
+            room.getEventLoop().execute(() -> addPlayerInLoop(room, player));
         } else {
-            System.out.println("Cannot add player. Room not found: " + player.getRoomId());
+            log.debug("Cannot add player. Room not found: {}", player.getRoomId());
         }
     }
 
+    private void addPlayerInLoop(Room room, Player player) {
+        if (room.isClosed()) {
+            log.debug("Cannot add player. Room was closed: {}", room.getId());
+            return;
+        }
+        if (!room.hasPlayer(player.getId()) && roomLifecycle.isFull(room)) {
+            roomLifecycle.playerRejected();
+            log.info("Cannot add player. Room is full: {}", room.getId());
+            return;
+        }
+        room.addPlayer(player);
+        // The room learns of the player from the next delta's joined list; only the joiner needs everything
+        if (player.getSessionId() != null) {
+            room.requestKeyframe(player.getSessionId());
+        }
+        log.debug("Added player {} to room {}, now {} players", player.getUsername(), room.getId(),
+                room.getPlayers().size());
+    }
+
+    /**
+     * Registers a player on the room's event loop. A player that is already in
+     * the room keeps its position and only picks up the new name and session;
+     * a new player is placed at the default spawn.
+     */
+    public boolean registerPlayer(Player incoming, String sessionId) {
+        Room room = activeRooms.get(incoming.getRoomId());
+        if (room == null) {
+            return false;
+        }
+        if (sessionId != null) {
+            sessionRegistry.bindPlayer(sessionId, room.getId(), incoming.getId());
+        }
+        room.getEventLoop().execute(() -> {
+            Player existing = room.getPlayers().get(incoming.getId());
+            if (existing != null) {
+                log.debug("Player {} already exists at ({},{})", existing.getUsername(), existing.getX(), existing.getY());
+                existing.setUsername(incoming.getUsername());
+                existing.setSessionId(sessionId);
+                // A new session numbers its inputs from 1 again; marked dirty so others see the reset too
+                existing.setAck(0);
+                existing.markDirty(Player.DIRTY_ACK);
+                if (sessionId != null) {
+                    room.requestKeyframe(sessionId);
+                }
+                // With area of interest on, the new session is sent everything visible as joins
+                room.removeInterestSet(existing.getId());
+                return;
+            }
+            // Handles are assigned by the room, never taken from the client
+            incoming.setHandle(0);
+            incoming.setX(movementValidator.getSpawnX());
+            incoming.setY(movementValidator.getSpawnY());
+            incoming.setSessionId(sessionId);
+            log.debug("New player: {} in room: {} spawn @({},{})", incoming.getUsername(), room.getId(),
+                    incoming.getX(), incoming.getY());
+            addPlayerInLoop(room, incoming);
+        });
+        return true;
+    }
+
+    public Room getRoom(String roomId) {
+        return activeRooms.get(roomId);
+    }
+
+    public Collection<Room> getActiveRooms() {
+        return Collections.unmodifiableCollection(activeRooms.values());
+    }
+
+    /**
+     * Recreates a room from a checkpoint with its players at their saved
+     * positions. The players have no session until their clients register again,
+     * which finds them already in the room and keeps the position; players that
+     * never come back are removed by {@link #dropUnclaimedPlayers}.
+     *
+     * @return false when the room could not be created on this node
+     */
+    public boolean restoreRoom(String roomId, List<Player> players) {
+        Room room = getOrCreateRoom(roomId);
+        if (room == null) {
+            return false;
+        }
+        room.getEventLoop().execute(() -> {
+            for (Player player : players) {
+                if (!room.hasPlayer(player.getId())) {
+                    player.setRoomId(room.getId());
+                    addPlayerInLoop(room, player);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Removes the given players from the room unless a session has claimed them
+     * since they were restored.
+     */
+    public void dropUnclaimedPlayers(String roomId, Collection<String> playerIds) {
+        Room room = activeRooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        room.getEventLoop().execute(() -> {
+            int dropped = 0;
+            for (String playerId : playerIds) {
+                Player player = room.getPlayers().get(playerId);
+                if (player != null && player.getSessionId() == null) {
+                    room.removePlayer(playerId);
+                    dropped++;
+                }
+            }
+            if (dropped > 0) {
+                log.info("Dropped {} restored players nobody reclaimed from room {}", dropped, roomId);
+                closeIfEmpty(room);
+            }
+        });
+    }
+
     public Map<String, Player> getPlayersInRoom(String roomId) {
         Room room = activeRooms.get(roomId);
         if (room != null) {
-            System.out.println("Retrieving players for room " + roomId
-                    + ": " + room.getPlayers().size() + " total");
             return room.getPlayers();
         }
         return new ConcurrentHashMap<>();
@@ -86,16 +446,412 @@ public class GameSessionService {
     public void removePlayer(String roomId, String playerId) {
         Room room = activeRooms.get(roomId);
         if (room != null) {
-            room.removePlayer(playerId);
-            System.out.println("Removed player " + playerId + " from room " + roomId);
-            if (room.getPlayers().isEmpty()) {
-                activeRooms.remove(roomId);
-                System.out.println("Room removed due to no players: " + roomId);
+            room.getEventLoop().execute(() -> {
+                room.removePlayer(playerId);
+                log.debug("Removed player {} from room {}", playerId, roomId);
+                closeIfEmpty(room);
+            });
+        }
+    }
+
+    // Runs on the room's event loop
+    private void closeIfEmpty(Room room) {
+        if (room.getPlayers().isEmpty() && closeRoom(room)) {
+            log.info("Room removed due to no players: {}", room.getId());
+        }
+    }
+
+    // Runs on the room's event loop
+    private boolean closeRoom(Room room) {
+        if (!activeRooms.remove(room.getId(), room)) {
+            return false;
+        }
+        room.close();
+        stopTicking(room);
+        roomJournal.closeRoom(room.getId());
+        roomLifecycle.releaseRoom();
+        return true;
+    }
+
+    /**
+     * Refreshes each room's heap estimate on its own loop and closes rooms that
+     * have been empty for longer than the idle TTL.
+     */
+    void reapIdleRooms() {
+        try {
+            long now = System.currentTimeMillis();
+            for (Room room : activeRooms.values()) {
+                room.getEventLoop().execute(() -> {
+                    if (room.isClosed()) {
+                        return;
+                    }
+                    room.updateHeapEstimate();
+                    if (roomLifecycle.isIdle(room, now) && closeRoom(room)) {
+                        roomLifecycle.roomReaped();
+                        log.info("Reaped idle room: {}", room.getId());
+                    }
+                });
             }
+            roomLifecycle.publish(activeRooms.values());
+            tickPolicy.publish(activeRooms.values());
+        } catch (RuntimeException e) {
+            log.error("Room reaper failed", e);
+        }
+    }
+
+    /**
+     * Removes the players of sessions that disconnected or went silent. Evictions
+     * are grouped so each room gets one task per sweep, and its next tick publishes
+     * all of the leaves in a single delta.
+     */
+    void evictStaleSessions() {
+        try {
+            Map<String, List<SessionRegistry.SessionInfo>> evictionsByRoom = new HashMap<>();
+            sessionRegistry.drainEvictions(sessionIdleTimeoutMs, session -> evictionsByRoom
+                    .computeIfAbsent(session.getRoomId(), roomId -> new ArrayList<>()).add(session));
+            evictionsByRoom.forEach(this::evictPlayers);
+        } catch (RuntimeException e) {
+            log.error("Session sweep failed", e);
         }
     }
 
+    private void evictPlayers(String roomId, List<SessionRegistry.SessionInfo> sessions) {
+        Room room = activeRooms.get(roomId);
+        if (room == null) {
+            return;
+        }
+        room.getEventLoop().execute(() -> {
+            int evicted = 0;
+            for (SessionRegistry.SessionInfo session : sessions) {
+                Player player = room.getPlayers().get(session.getPlayerId());
+                // Skip players that reconnected on a new session in the meantime
+                if (player != null && session.getSessionId().equals(player.getSessionId())) {
+                    room.removePlayer(player.getId());
+                    evicted++;
+                }
+            }
+            if (evicted > 0) {
+                log.info("Evicted {} disconnected players from room {}", evicted, roomId);
+                closeIfEmpty(room);
+            }
+        });
+    }
+
     public boolean roomExists(String roomId) {
         return activeRooms.containsKey(roomId);
     }
+
+    // ---------------------- TICK LOOP ----------------------
+
+    /**
+     * Stores a movement input in the player's latest-wins slot. Only the newest
+     * sample per player is applied on the room's next tick, so bursts of moves
+     * between ticks never queue up. Moves for players not in the room are rejected,
+     * which keeps the slots bounded by the room's size.
+     */
+    public boolean submitMove(Player movement) {
+        Room room = activeRooms.get(movement.getRoomId());
+        if (room == null || movement.getId() == null || !room.hasPlayer(movement.getId())) {
+            return false;
+        }
+        room.submitMove(movement);
+        return true;
+    }
+
+    /**
+     * Decodes a binary MOVE frame and queues it like a JSON movement input.
+     * The player is resolved from the frame's room-scoped handle and must be the
+     * one controlled by the sending session.
+     */
+    public boolean submitBinaryMove(String roomId, byte[] frame, String sessionId) {
+        Room room = activeRooms.get(roomId);
+        if (room == null) {
+            return false;
+        }
+        Player movement = new Player();
+        if (!BinaryMovementCodec.decodeMove(frame, movement)) {
+            return false;
+        }
+        Player player = room.getPlayerByHandle(movement.getHandle());
+        if (player == null || sessionId == null || !sessionId.equals(player.getSessionId())) {
+            return false;
+        }
+        movement.setId(player.getId());
+        movement.setRoomId(roomId);
+        movement.setTimestamp(System.currentTimeMillis());
+        room.submitMove(movement);
+        return true;
+    }
+
+    /**
+     * Opts one session into binary delta frames, in addition to JSON. The room
+     * keeps publishing JSON to everyone else; binary frames go only to the
+     * queues of sessions that negotiated them.
+     */
+    public boolean enableBinaryProtocol(String roomId, String sessionId) {
+        return sessionId != null && activeRooms.containsKey(roomId) && sessionRegistry.enableBinaryProtocol(sessionId);
+    }
+
+    /**
+     * Sends the player's retained authoritative states with an acknowledged input
+     * sequence of at least {@code sinceSeq} to its session, oldest first, starting
+     * from the state the server confirmed for that input. Lets a client that
+     * missed snapshots rewind and replay its unacknowledged inputs.
+     */
+    public boolean sendHistory(String roomId, String playerId, long sinceSeq, String sessionId) {
+        Room room = activeRooms.get(roomId);
+        if (room == null || playerId == null || sessionId == null) {
+            return false;
+        }
+        room.getEventLoop().execute(() -> {
+            StateHistory history = room.getHistory(playerId);
+            Player player = room.getPlayers().get(playerId);
+            // Only the session that controls the player may read its history
+            if (history == null || player == null || !sessionId.equals(player.getSessionId())) {
+                return;
+            }
+            List<Map<String, Object>> states = new ArrayList<>();
+            for (int i = Math.max(0, history.indexAtOrBefore(sinceSeq)); i < history.size(); i++) {
+                states.add(Map.of("tick", history.tickAt(i), "seq", history.seqAt(i),
+                        "x", history.xAt(i), "y", history.yAt(i)));
+            }
+            roomBroadcaster.sendToSession(sessionId, "/queue/rooms/" + roomId + "/history",
+                    Map.of("roomId", roomId, "playerId", playerId, "ack", player.getAck(), "states", states));
+        });
+        return true;
+    }
+
+    /*
+     * Builds a fully configured room that is not published yet. Everything the
+     * event loop relies on is in place before activeRooms makes the room visible
+     * to inbound threads, so no task can run anywhere but on the room's loop.
+     */
+    private Room newRoom(String roomId) {
+        Room room = new Room(roomId, new RoomEventLoop(roomId, roomWorkers));
+        room.setHistorySize(historySize);
+        room.setSpatialGrid(new SpatialGrid(aoiCellSize));
+        if (proximityEnabled) {
+            room.setProximityGroups(new ProximityGroups(proximityRadius, proximityLeaveRadius));
+        }
+        return room;
+    }
+
+    // Only for a room that won its activeRooms slot
+    private void startTicking(Room room) {
+        room.setTickRateHz(tickRateHz);
+        scheduleTicks(room);
+    }
+
+    private void scheduleTicks(Room room) {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / room.getTickRateHz();
+        room.setTickTask(tickScheduler.scheduleAtFixedRate(
+                () -> scheduleTick(room), periodNanos, periodNanos, TimeUnit.NANOSECONDS));
+    }
+
+    // Runs on the scheduler thread: hands the tick to the room's event loop
+    private void scheduleTick(Room room) {
+        if (room.tryScheduleTick()) {
+            room.getEventLoop().execute(() -> {
+                room.tickStarted();
+                long started = System.nanoTime();
+                tick(room);
+                room.recordTickDuration(System.nanoTime() - started);
+                adaptTickRate(room);
+            });
+        }
+    }
+
+    /**
+     * Runs on the room's event loop after a tick. Once per evaluation window, asks
+     * the tick policy for a rate given the room's players, how many of them are
+     * moving, the deepest outbound queue among their sessions and how much of
+     * the tick period ticks take, and reschedules the room's ticks if it changed.
+     */
+    void adaptTickRate(Room room) {
+        if (!tickPolicy.isEnabled() || room.isClosed()) {
+            return;
+        }
+        double tickLoad = room.drainTickLoad(System.nanoTime(),
+                TimeUnit.MILLISECONDS.toNanos(tickPolicy.getEvaluateEveryMs()));
+        if (tickLoad < 0) {
+            return;
+        }
+        int moving = 0;
+        int maxQueued = 0;
+        for (Player player : room.getPlayers().values()) {
+            if (player.getIsMoving()) {
+                moving++;
+            }
+            if (player.getSessionId() != null) {
+                maxQueued = Math.max(maxQueued, outboundFlowControl.getQueuedMessages(player.getSessionId()));
+            }
+        }
+        int current = room.getTickRateHz();
+        int target = tickPolicy.targetRateHz(current, room.getPlayers().size(), moving, maxQueued, tickLoad);
+        if (target != current) {
+            stopTicking(room);
+            room.setTickRateHz(target);
+            scheduleTicks(room);
+            log.debug("Room {} tick rate {} -> {} Hz ({} players, {} moving, queue {})", room.getId(), current, target,
+                    room.getPlayers().size(), moving, maxQueued);
+        }
+    }
+
+    private void stopTicking(Room room) {
+        ScheduledFuture<?> tickTask = room.getTickTask();
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+    }
+
+    private void applyMove(Room room, Player movement) {
+        Player existing = room.getPlayers().get(movement.getId());
+        if (existing == null) {
+            return;
+        }
+        // Older than what was already applied: a late packet, drop it
+        if (movement.getSeq() > 0 ? movement.getSeq() <= existing.getAck()
+                : movement.getTimestamp() < existing.getTimestamp()) {
+            return;
+        }
+        if (movement.getSeq() > 0) {
+            existing.setAck(movement.getSeq());
+        }
+        // Authoritative positions live on the fixed-point grid that snapshots carry
+        double x = FixedPoint.quantize(movement.getX());
+        double y = FixedPoint.quantize(movement.getY());
+        if (movementValidator.check(existing, x, y, room.getTickTime(), room.getTickRateHz())
+                != MovementValidator.Verdict.ACCEPTED) {
+            // Resend the authoritative position; with the ack above the client rewinds to it
+            existing.markDirty(Player.DIRTY_POSITION);
+            return;
+        }
+        existing.setLastMoveTime(room.getTickTime());
+        existing.setX(x);
+        existing.setY(y);
+        existing.setDirection(movement.getDirection());
+        existing.setIsMoving(movement.getIsMoving());
+        existing.setAnimation(movement.getAnimation());
+        existing.setTimestamp(movement.getTimestamp());
+    }
+
+    /**
+     * Runs on the room's event loop. Applies the latest movement input of each
+     * player received since the previous tick, updates the room's spatial index
+     * and proximity groups for players that moved, journals the changes when
+     * enabled, then publishes either a keyframe (when due or requested) or a
+     * delta of the players that changed. Snapshots are built here, so they are
+     * always consistent.
+     */
+    void tick(Room room) {
+        try {
+            long tick = room.nextTick();
+            room.drainMoves(movement -> applyMove(room, movement));
+
+            List<String> joinedIds = room.drainJoinedPlayerIds();
+            Map<String, Integer> leftPlayers = room.drainLeftPlayers();
+            List<String> leftIds = new ArrayList<>(leftPlayers.keySet());
+            // The interval is configured at the starting rate; keep its wall-clock length as the rate moves
+            long keyframeInterval = Math.max(1, (long) keyframeIntervalTicks * room.getTickRateHz() / tickRateHz);
+            boolean keyframeDue = tick - room.getLastKeyframeTick() >= keyframeInterval;
+            List<String> keyframeSessions = room.drainKeyframeRequests();
+
+            SpatialGrid grid = room.getSpatialGrid();
+            for (String playerId : leftIds) {
+                grid.remove(playerId);
+            }
+            PlayerStateStore store = room.getStateStore();
+            Set<String> joinedSet = new HashSet<>(joinedIds);
+            List<Player> changed = new ArrayList<>();
+            List<String> movedIds = new ArrayList<>();
+            // Room membership only changes on this loop, so the size is stable during the tick
+            int[] changedHandles = new int[room.getPlayers().size()];
+            for (Player player : room.getPlayers().values()) {
+                if (player.isDirty() || joinedSet.contains(player.getId())) {
+                    if ((player.getDirtyFlags() & Player.DIRTY_POSITION) != 0 || !grid.contains(player.getId())) {
+                        grid.update(player.getId(), player.getX(), player.getY());
+                        movedIds.add(player.getId());
+                    }
+                    store.set(player.getHandle(), (float) player.getX(), (float) player.getY(),
+                            BinaryMovementCodec.encodeState(player));
+                    StateHistory history = room.getHistory(player.getId());
+                    if (history != null) {
+                        history.record(tick, player.getAck(), player.getX(), player.getY());
+                    }
+                    player.setServerTime(room.getTickTime());
+                    player.clearDirty();
+                    changedHandles[changed.size()] = player.getHandle();
+                    changed.add(player);
+                }
+            }
+            if (keyframeDue) {
+                room.setLastKeyframeTick(tick);
+            }
+            List<Player> joined = new ArrayList<>(joinedIds.size());
+            List<Player> updated = new ArrayList<>(changed.size());
+            for (Player player : changed) {
+                (joinedSet.contains(player.getId()) ? joined : updated).add(player);
+            }
+            if (roomJournal.isEnabled() && (!changed.isEmpty() || !leftPlayers.isEmpty())) {
+                roomJournal.record(room.getId(), JournalFrame.of(tick, room.getTickTime(), joined, changed, leftPlayers.values()));
+            }
+
+            ProximityGroups proximity = room.getProximityGroups();
+            if (proximity != null && (!movedIds.isEmpty() || !leftIds.isEmpty())) {
+                List<ProximityEvent> events = proximity.update(movedIds, leftIds, room.getPlayers());
+                if (!events.isEmpty()) {
+                    roomBroadcaster.broadcastProximity(room.getId(), tick, room.getTickTime(), events);
+                }
+            }
+
+            // Binary clients take membership from the JSON keyframes, movement from these frames
+            if ((!changed.isEmpty() || !leftPlayers.isEmpty()) && sessionRegistry.hasBinarySessions()) {
+                List<String> binarySessionIds = binarySessionIds(room);
+                if (!binarySessionIds.isEmpty()) {
+                    roomBroadcaster.broadcastBinaryDelta(room, tick, store, changedHandles, changed.size(),
+                            leftPlayers.values(), binarySessionIds);
+                }
+            }
+            // Handles of players that left this tick were announced above; they may be reused from now on
+            store.recycleReleased();
+
+            if (aoiEnabled) {
+                Set<String> changedIds = new HashSet<>();
+                for (Player player : changed) {
+                    changedIds.add(player.getId());
+                }
+                roomBroadcaster.broadcastInterestDeltas(room, tick, changedIds, leftIds, keyframeDue, aoiRadius);
+                return;
+            }
+
+            if (keyframeDue) {
+                roomBroadcaster.broadcastPlayerStates(room);
+                return;
+            }
+
+            RoomDelta delta = new RoomDelta(room.getId(), tick, room.getTickTime(), joined, updated, leftIds);
+            if (!delta.isEmpty()) {
+                roomBroadcaster.broadcastDelta(room, delta);
+            }
+            // After the delta, so it supersedes anything still queued for these sessions
+            if (!keyframeSessions.isEmpty()) {
+                roomBroadcaster.sendKeyframe(room, keyframeSessions);
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the scheduled tick, so keep the room alive
+            tickFailureLog.atError().addKeyValue("roomId", room.getId()).setCause(e).log("Tick failed");
+        }
+    }
+
+    // Sessions of the room's players that negotiated binary frames
+    private List<String> binarySessionIds(Room room) {
+        List<String> sessionIds = new ArrayList<>();
+        for (Player player : room.getPlayers().values()) {
+            String sessionId = player.getSessionId();
+            if (sessionId != null && sessionRegistry.usesBinaryProtocol(sessionId)) {
+                sessionIds.add(sessionId);
+            }
+        }
+        return sessionIds;
+    }
 }
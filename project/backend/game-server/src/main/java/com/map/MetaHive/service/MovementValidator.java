@@ -0,0 +1,153 @@
+package com.map.MetaHive.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.WalkabilityGrid;
+import com.map.MetaHive.protocol.FixedPoint;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejects movement inputs the server should not apply: positions on tiles the
+ * map marks as blocked (or outside it), and jumps longer than a player can walk
+ * in the time since its last accepted move on the room clock. The elapsed time
+ * is at least one tick period and at most {@code max-elapsed-ms}, so a player
+ * that stood still for a while cannot teleport on its next input.
+ * <p>
+ * The map is required while validation is on: startup fails if it cannot be
+ * loaded, rather than silently falling back to the speed limit alone.
+ * <p>
+ * Runs on room event loops for every applied move and does not allocate.
+ */
+@Component
+public class MovementValidator {
+
+    private static final Logger log = LoggerFactory.getLogger(MovementValidator.class);
+
+    public enum Verdict { ACCEPTED, BLOCKED, TOO_FAST }
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.movement.validation.enabled:true}")
+    private boolean enabled = true;
+
+    // Tiled JSON map whose boundary layer defines where players cannot stand; a copy of the frontend's map
+    @Value("${game.map.location:classpath:maps/mapfinal1.json}")
+    private String mapLocation = "classpath:maps/mapfinal1.json";
+
+    @Value("${game.map.boundary-layer:boundaries}")
+    private String boundaryLayer = "boundaries";
+
+    // Object layer whose first point is where new players appear
+    @Value("${game.map.spawn-layer:spawnpoint}")
+    private String spawnLayer = "spawnpoint";
+
+    @Value("${game.movement.max-speed-px-per-s:240}")
+    private double maxSpeedPxPerSecond = 240;
+
+    // Allowance for inputs that arrive bunched up by network jitter
+    @Value("${game.movement.slack-px:32}")
+    private double slackPx = 32;
+
+    @Value("${game.movement.max-elapsed-ms:500}")
+    private long maxElapsedMs = 500;
+
+    private WalkabilityGrid walkability;
+    private double spawnX = GameSessionService.DEFAULT_SPAWN_X;
+    private double spawnY = GameSessionService.DEFAULT_SPAWN_Y;
+    private final AtomicLong blockedMoves = new AtomicLong();
+    private final AtomicLong tooFastMoves = new AtomicLong();
+
+    @PostConstruct
+    void loadMap() {
+        if (meterRegistry != null) {
+            FunctionCounter.builder("game.moves.rejected", blockedMoves, AtomicLong::get)
+                    .tag("reason", "blocked")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.moves.rejected", tooFastMoves, AtomicLong::get)
+                    .tag("reason", "speed")
+                    .register(meterRegistry);
+        }
+        if (!enabled) {
+            return;
+        }
+        Resource resource = new DefaultResourceLoader().getResource(mapLocation);
+        try (InputStream in = resource.getInputStream()) {
+            JsonNode map = new ObjectMapper().readTree(in);
+            walkability = WalkabilityGrid.fromTiled(map, boundaryLayer);
+            readSpawnPoint(map);
+            log.info("Loaded map {}: {}x{} tiles, {} blocked", mapLocation, walkability.getColumns(),
+                    walkability.getRows(), walkability.getBlockedTileCount());
+        } catch (IOException e) {
+            // Without the map players could walk through walls
+            throw new IllegalStateException("Could not load map " + mapLocation
+                    + "; set game.movement.validation.enabled=false to run without move validation", e);
+        }
+    }
+
+    private void readSpawnPoint(JsonNode map) {
+        for (JsonNode layer : map.path("layers")) {
+            JsonNode spawn = layer.path("objects").path(0);
+            if (spawnLayer.equals(layer.path("name").asText()) && !spawn.isMissingNode()) {
+                spawnX = FixedPoint.quantize(spawn.path("x").asDouble());
+                spawnY = FixedPoint.quantize(spawn.path("y").asDouble());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks a move of {@code player} to ({@code x}, {@code y}) at room time
+     * {@code now}. Accepted moves must be followed by
+     * {@link Player#setLastMoveTime(long)} so the next move is timed from them.
+     */
+    public Verdict check(Player player, double x, double y, long now, int tickRateHz) {
+        if (!enabled) {
+            return Verdict.ACCEPTED;
+        }
+        if (walkability != null && !walkability.isWalkable(x, y)) {
+            blockedMoves.incrementAndGet();
+            return Verdict.BLOCKED;
+        }
+        long tickPeriodMs = tickRateHz > 0 ? 1000 / tickRateHz : 0;
+        long elapsedMs = Math.max(tickPeriodMs, Math.min(maxElapsedMs, now - player.getLastMoveTime()));
+        double allowed = maxSpeedPxPerSecond * elapsedMs / 1000.0 + slackPx;
+        double dx = x - player.getX();
+        double dy = y - player.getY();
+        if (dx * dx + dy * dy > allowed * allowed) {
+            tooFastMoves.incrementAndGet();
+            return Verdict.TOO_FAST;
+        }
+        return Verdict.ACCEPTED;
+    }
+
+    public boolean isWalkable(double x, double y) {
+        return walkability == null || walkability.isWalkable(x, y);
+    }
+
+    public double getSpawnX() {
+        return spawnX;
+    }
+
+    public double getSpawnY() {
+        return spawnY;
+    }
+
+    public long getRejectedMoveCount() {
+        return blockedMoves.get() + tooFastMoves.get();
+    }
+}
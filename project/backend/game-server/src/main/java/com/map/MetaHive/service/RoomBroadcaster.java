@@ -0,0 +1,330 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.PlayerStateStore;
+import com.map.MetaHive.model.ProximityEvent;
+import com.map.MetaHive.model.Room;
+import com.map.MetaHive.model.RoomDelta;
+import com.map.MetaHive.model.SpatialGrid;
+import com.map.MetaHive.protocol.BinaryMovementCodec;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes room state to subscribed clients. Called from the room tick loop,
+ * at most once per room per tick. JSON snapshots are encoded once by
+ * {@link SnapshotEncoder} and sent as pre-encoded byte payloads, so the message
+ * converter pipeline is skipped on the tick path.
+ * <p>
+ * For each kind of broadcast, {@code game.broadcast.serialization} times the
+ * encoding and {@code game.broadcast.fanout} records how many sessions it goes
+ * to: the room's connected players for topic broadcasts, the sessions sent to
+ * for area-of-interest and binary deltas.
+ */
+@Service
+public class RoomBroadcaster {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private SnapshotEncoder snapshotEncoder;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private BroadcastMeters keyframes = BroadcastMeters.NONE;
+    private BroadcastMeters deltas = BroadcastMeters.NONE;
+    private BroadcastMeters binaryDeltas = BroadcastMeters.NONE;
+    private BroadcastMeters interestDeltas = BroadcastMeters.NONE;
+
+    // Ticks of many rooms run in parallel on the worker pool, but each thread runs one tick at a time
+    private final ThreadLocal<InterestScratch> interestScratch = ThreadLocal.withInitial(InterestScratch::new);
+
+    @PostConstruct
+    void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        keyframes = new BroadcastMeters(meterRegistry, "keyframe");
+        deltas = new BroadcastMeters(meterRegistry, "delta");
+        binaryDeltas = new BroadcastMeters(meterRegistry, "binary");
+        interestDeltas = new BroadcastMeters(meterRegistry, "interest");
+    }
+
+    // Full keyframe: every player in the room, keyed by player id
+    public void broadcastPlayerStates(Room room) {
+        long started = System.nanoTime();
+        byte[] snapshot = snapshotEncoder.encode(room.getPlayers());
+        keyframes.record(System.nanoTime() - started, room);
+        messagingTemplate.send("/topic/rooms/" + room.getId() + "/players", snapshotEncoder.toSnapshotMessage(snapshot, room.getId(), true, null));
+    }
+
+    /**
+     * Full keyframe for the given sessions only, on their
+     * {@code /user/queue/rooms/{roomId}/players}: joining or reconnecting clients
+     * sync up without a room-wide keyframe. Encoded once for all of them.
+     */
+    public void sendKeyframe(Room room, List<String> sessionIds) {
+        long started = System.nanoTime();
+        byte[] snapshot = snapshotEncoder.encode(room.getPlayers());
+        keyframes.record(System.nanoTime() - started, sessionIds.size());
+        String destination = "/queue/rooms/" + room.getId() + "/players";
+        for (String sessionId : sessionIds) {
+            messagingTemplate.send(userDestination(sessionId, destination),
+                    snapshotEncoder.toSnapshotMessage(snapshot, room.getId(), true, sessionId));
+        }
+    }
+
+    // Only players that changed since the previous tick, plus joins and leaves
+    public void broadcastDelta(Room room, RoomDelta delta) {
+        long started = System.nanoTime();
+        byte[] snapshot = snapshotEncoder.encode(delta);
+        deltas.record(System.nanoTime() - started, room);
+        messagingTemplate.send("/topic/rooms/" + delta.getRoomId() + "/delta",
+                snapshotEncoder.toSnapshotMessage(snapshot, delta.getRoomId(), delta.isKeyframe(), null));
+    }
+
+    /**
+     * Binary frame of the given handles' packed states, encoded once and sent to
+     * the {@code /user/queue/rooms/{roomId}/delta.bin} of each session that
+     * negotiated the binary protocol. The octet-stream content type makes STOMP
+     * write it as a binary WebSocket frame.
+     */
+    public void broadcastBinaryDelta(Room room, long tick, PlayerStateStore store, int[] handles, int count,
+                                     Collection<Integer> leftHandles, List<String> sessionIds) {
+        long started = System.nanoTime();
+        byte[] frame = BinaryMovementCodec.encodeDelta(tick, room.getTickTime(), store, handles, count, leftHandles);
+        binaryDeltas.record(System.nanoTime() - started, sessionIds.size());
+        String destination = "/queue/rooms/" + room.getId() + "/delta.bin";
+        for (String sessionId : sessionIds) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            accessor.setSessionId(sessionId);
+            accessor.setHeader(OutboundFlowControl.ROOM_HEADER, room.getId());
+            accessor.setHeader(OutboundFlowControl.KEYFRAME_HEADER, false);
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(userDestination(sessionId, destination),
+                    MessageBuilder.createMessage(frame, accessor.getMessageHeaders()));
+        }
+    }
+
+    // Proximity group enters and leaves of this tick; clients join the call of their own group
+    public void broadcastProximity(String roomId, long tick, long serverTime, List<ProximityEvent> events) {
+        messagingTemplate.convertAndSend("/topic/rooms/" + roomId + "/proximity",
+                Map.of("roomId", roomId, "tick", tick, "serverTime", serverTime, "events", events));
+    }
+
+    /**
+     * Area-of-interest fan-out: each registered player's session receives only the
+     * players within {@code radius} of it. Players entering the radius arrive as
+     * joins, players leaving it (or the room) as leaves, and players that stayed
+     * visible are sent only if they changed this tick. Each player record is
+     * encoded once per tick and spliced into every delta that contains it.
+     * <p>
+     * Outside keyframes, a viewer that did not change is skipped without a radius
+     * query when no changed player is in a cell its query would scan and none of
+     * the players it saw changed or left: its view is then exactly what it was.
+     * The working collections are reused across viewers and ticks, and each
+     * viewer's new interest set replaces the previous one, which is recycled.
+     */
+    public void broadcastInterestDeltas(Room room, long tick, Set<String> changedIds,
+                                        List<String> leftIds, boolean keyframe, double radius) {
+        Map<String, Player> players = room.getPlayers();
+        SpatialGrid grid = room.getSpatialGrid();
+        SnapshotEncoder.PlayerFragments fragments = snapshotEncoder.newPlayerFragments();
+        String destination = "/queue/rooms/" + room.getId() + "/delta";
+        InterestScratch scratch = interestScratch.get();
+        long serializationNanos = 0;
+        int recipients = 0;
+        for (String playerId : leftIds) {
+            room.removeInterestSet(playerId);
+        }
+        Set<Long> changedCells = scratch.changedCells;
+        changedCells.clear();
+        if (!keyframe) {
+            grid.collectCells(changedIds, changedCells);
+        }
+        for (Player viewer : players.values()) {
+            if (viewer.getSessionId() == null) {
+                continue;
+            }
+            Set<String> previous = room.getInterestSet(viewer.getId());
+            if (!keyframe && !changedIds.contains(viewer.getId())
+                    && !grid.anyCellInRange(viewer.getX(), viewer.getY(), radius, changedCells)
+                    && !containsAny(previous, changedIds, leftIds)) {
+                continue;
+            }
+            Set<String> visible = scratch.visible;
+            List<Player> entered = scratch.entered;
+            List<Player> updated = scratch.updated;
+            List<String> gone = scratch.gone;
+            visible.clear();
+            entered.clear();
+            updated.clear();
+            gone.clear();
+            grid.query(viewer.getX(), viewer.getY(), radius, visible::add);
+
+            for (String playerId : visible) {
+                Player player = players.get(playerId);
+                if (player == null) {
+                    continue;
+                }
+                if (keyframe || !previous.contains(playerId)) {
+                    entered.add(player);
+                } else if (changedIds.contains(playerId)) {
+                    updated.add(player);
+                }
+            }
+            if (!keyframe) {
+                for (String playerId : previous) {
+                    if (!visible.contains(playerId)) {
+                        gone.add(playerId);
+                    }
+                }
+            }
+            Set<String> replaced = room.setInterestSet(viewer.getId(), visible);
+            scratch.visible = replaced != null ? replaced : new HashSet<>();
+
+            if (keyframe || !entered.isEmpty() || !updated.isEmpty() || !gone.isEmpty()) {
+                long started = System.nanoTime();
+                byte[] payload = fragments.composeDelta(room.getId(), tick, room.getTickTime(), keyframe,
+                        entered, updated, gone);
+                serializationNanos += System.nanoTime() - started;
+                recipients++;
+                String sessionId = viewer.getSessionId();
+                messagingTemplate.send(userDestination(sessionId, destination),
+                        snapshotEncoder.toSnapshotMessage(payload, room.getId(), keyframe, sessionId));
+            }
+        }
+        interestDeltas.record(serializationNanos, recipients);
+    }
+
+    // Whether the viewer saw any player that changed or left this tick
+    private static boolean containsAny(Set<String> previous, Set<String> changedIds, List<String> leftIds) {
+        if (previous.isEmpty()) {
+            return false;
+        }
+        for (String playerId : leftIds) {
+            if (previous.contains(playerId)) {
+                return true;
+            }
+        }
+        if (changedIds.size() <= previous.size()) {
+            for (String playerId : changedIds) {
+                if (previous.contains(playerId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (String playerId : previous) {
+            if (changedIds.contains(playerId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Resolved by the user destination handler to /user/queue/... of that session only
+    public void sendToSession(String sessionId, String destination, Object payload) {
+        messagingTemplate.convertAndSendToUser(sessionId, destination, payload, sessionHeaders(sessionId));
+    }
+
+    // "/user/{sessionId}/queue/..." which the user destination handler resolves to that session
+    private String userDestination(String sessionId, String destination) {
+        return messagingTemplate.getUserDestinationPrefix() + sessionId + destination;
+    }
+
+    private static MessageHeaders sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    /**
+     * Per-thread working collections of {@link #broadcastInterestDeltas}. Emptied
+     * before each use; {@code visible} is handed to the room as a viewer's interest
+     * set and replaced by the set it displaces.
+     */
+    private static final class InterestScratch {
+        private Set<String> visible = new HashSet<>();
+        private final List<Player> entered = new ArrayList<>();
+        private final List<Player> updated = new ArrayList<>();
+        private final List<String> gone = new ArrayList<>();
+        private final Set<Long> changedCells = new HashSet<>();
+    }
+
+    /**
+     * Serialization time and fan-out of one kind of broadcast. Without a meter
+     * registry nothing is recorded and the room's sessions are not counted.
+     */
+    private static final class BroadcastMeters {
+        private static final BroadcastMeters NONE = new BroadcastMeters(null, null);
+
+        private final Timer serialization;
+        private final DistributionSummary fanOut;
+
+        private BroadcastMeters(MeterRegistry meterRegistry, String type) {
+            if (meterRegistry == null) {
+                serialization = null;
+                fanOut = null;
+                return;
+            }
+            serialization = Timer.builder("game.broadcast.serialization")
+                    .tag("type", type)
+                    .description("Time to encode one broadcast, all per-client deltas of a tick for interest")
+                    .register(meterRegistry);
+            fanOut = DistributionSummary.builder("game.broadcast.fanout")
+                    .tag("type", type)
+                    .description("Sessions one broadcast is delivered to")
+                    .baseUnit("sessions")
+                    .register(meterRegistry);
+        }
+
+        private void record(long serializationNanos, Room room) {
+            if (serialization != null) {
+                record(serializationNanos, connectedPlayers(room));
+            }
+        }
+
+        private void record(long serializationNanos, int recipients) {
+            if (serialization == null) {
+                return;
+            }
+            serialization.record(serializationNanos, TimeUnit.NANOSECONDS);
+            fanOut.record(recipients);
+        }
+
+        // Topic subscribers are the room's players with a session; restored players have none yet
+        private static int connectedPlayers(Room room) {
+            int connected = 0;
+            for (Player player : room.getPlayers().values()) {
+                if (player.getSessionId() != null) {
+                    connected++;
+                }
+            }
+            return connected;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.cluster.RoomPlacement;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.Room;
+import com.map.MetaHive.protocol.BinaryMovementCodec;
+import com.map.MetaHive.protocol.FixedPoint;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Periodically saves every room and its players' positions to a local file and
+ * restores them when the server starts, so a restart or rolling deploy does not
+ * send everyone back to spawn.
+ * <p>
+ * Each room's state is copied on its own event loop, so the copy is consistent
+ * and the tick path only pays for the copy; encoding and disk I/O happen on the
+ * checkpoint thread. The file is written to a temporary name, synced and
+ * atomically renamed over the previous checkpoint, so a crash mid-write leaves
+ * the last complete checkpoint in place. A final checkpoint is written on
+ * shutdown.
+ * <p>
+ * Restoring runs while the application context starts, before the web server
+ * accepts connections. Restored players have no session until their clients
+ * register again; those that do not come back within {@code reclaim-ttl-ms} are
+ * removed.
+ *
+ * <pre>
+ * i32 magic "MHCK" | u8 version | i64 savedAt (epoch ms) | i32 rooms
+ * rooms   * (utf roomId | i32 players
+ *            | players * (utf id | nullable utf username | nullable utf color | i32 x | i32 y | u8 state))
+ * i64 CRC32 of everything before it
+ * </pre>
+ * Positions are {@link FixedPoint} values and state the packed direction and
+ * moving bits of {@link BinaryMovementCodec}.
+ */
+@Component
+public class RoomCheckpointer {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomCheckpointer.class);
+
+    static final int MAGIC = 0x4D48434B;
+    static final byte VERSION = 1;
+
+    @Autowired
+    private GameSessionService gameSessionService;
+
+    @Autowired
+    private RoomPlacement roomPlacement;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.checkpoint.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${game.checkpoint.file:checkpoint/rooms.ckpt}")
+    private String file = "checkpoint/rooms.ckpt";
+
+    @Value("${game.checkpoint.interval-ms:5000}")
+    private long intervalMs = 5000;
+
+    // Older checkpoints are ignored at startup: the players have long gone
+    @Value("${game.checkpoint.max-age-ms:600000}")
+    private long maxAgeMs = 600000;
+
+    @Value("${game.checkpoint.reclaim-ttl-ms:60000}")
+    private long reclaimTtlMs = 60000;
+
+    // How long a checkpoint waits for busy room loops to copy their state
+    @Value("${game.checkpoint.capture-timeout-ms:1000}")
+    private long captureTimeoutMs = 1000;
+
+    private ScheduledExecutorService executor;
+    private final AtomicLong checkpointsWritten = new AtomicLong();
+    private final AtomicLong checkpointsFailed = new AtomicLong();
+    private final AtomicLong restoredPlayers = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        if (meterRegistry != null) {
+            FunctionCounter.builder("game.checkpoints", checkpointsWritten, AtomicLong::get)
+                    .tag("result", "written")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.checkpoints", checkpointsFailed, AtomicLong::get)
+                    .tag("result", "failed")
+                    .register(meterRegistry);
+            FunctionCounter.builder("game.checkpoint.players.restored", restoredPlayers, AtomicLong::get)
+                    .register(meterRegistry);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        restore();
+        executor.scheduleWithFixedDelay(this::checkpoint, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(captureTimeoutMs, TimeUnit.MILLISECONDS);
+        // Room loops still run until GameSessionService, which this depends on, is destroyed
+        checkpoint();
+    }
+
+    public Path getFile() {
+        return Path.of(file);
+    }
+
+    /**
+     * Copies every room on its event loop and writes the checkpoint. If a room's
+     * loop does not respond within the capture timeout, the checkpoint is skipped
+     * and the previous one stays in place rather than losing that room.
+     */
+    void checkpoint() {
+        try {
+            List<CompletableFuture<RoomState>> captures = new ArrayList<>();
+            for (Room room : gameSessionService.getActiveRooms()) {
+                CompletableFuture<RoomState> capture = new CompletableFuture<>();
+                room.getEventLoop().execute(() -> capture.complete(room.isClosed() ? null : RoomState.of(room)));
+                captures.add(capture);
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(captureTimeoutMs);
+            List<RoomState> rooms = new ArrayList<>(captures.size());
+            for (CompletableFuture<RoomState> capture : captures) {
+                RoomState state = capture.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (state != null && !state.players.isEmpty()) {
+                    rooms.add(state);
+                }
+            }
+            write(rooms);
+            checkpointsWritten.incrementAndGet();
+        } catch (TimeoutException e) {
+            checkpointsFailed.incrementAndGet();
+            log.warn("Checkpoint skipped: a room loop did not respond within {} ms", captureTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            checkpointsFailed.incrementAndGet();
+            log.warn("Checkpoint failed", e);
+        }
+    }
+
+    private void write(List<RoomState> rooms) throws IOException {
+        Path target = getFile().toAbsolutePath();
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(rooms.size());
+            for (RoomState room : rooms) {
+                out.writeUTF(room.roomId);
+                out.writeInt(room.players.size());
+                for (Player player : room.players) {
+                    out.writeUTF(player.getId());
+                    writeNullableUTF(out, player.getUsername());
+                    writeNullableUTF(out, player.getColor());
+                    out.writeInt(FixedPoint.toFixed(player.getX()));
+                    out.writeInt(FixedPoint.toFixed(player.getY()));
+                    out.writeByte(BinaryMovementCodec.encodeState(player));
+                }
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Recreates the rooms of the last checkpoint that this node owns.
+     */
+    void restore() {
+        Path path = getFile();
+        List<RoomState> rooms;
+        long savedAt;
+        try (InputStream fileIn = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(fileIn), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                log.warn("Ignoring checkpoint {}: unknown format", path);
+                return;
+            }
+            savedAt = in.readLong();
+            int roomCount = in.readInt();
+            rooms = new ArrayList<>(roomCount);
+            for (int i = 0; i < roomCount; i++) {
+                String roomId = in.readUTF();
+                int playerCount = in.readInt();
+                List<Player> players = new ArrayList<>(playerCount);
+                for (int j = 0; j < playerCount; j++) {
+                    Player player = new Player();
+                    player.setId(in.readUTF());
+                    player.setUsername(readNullableUTF(in));
+                    player.setColor(readNullableUTF(in));
+                    player.setX(FixedPoint.toDouble(in.readInt()));
+                    player.setY(FixedPoint.toDouble(in.readInt()));
+                    BinaryMovementCodec.applyState(in.readByte(), player);
+                    players.add(player);
+                }
+                rooms.add(new RoomState(roomId, players));
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                log.warn("Ignoring checkpoint {}: checksum mismatch", path);
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            // A truncated file throws an EOFException without a message
+            log.warn("Ignoring checkpoint {}: {}", path, e.toString());
+            return;
+        }
+        long age = System.currentTimeMillis() - savedAt;
+        if (age > maxAgeMs) {
+            log.info("Ignoring checkpoint {} from {} ms ago", path, age);
+            return;
+        }
+
+        int restoredRooms = 0;
+        for (RoomState room : rooms) {
+            // The cluster may have changed while this node was down
+            if (!roomPlacement.isLocal(room.roomId) || !gameSessionService.restoreRoom(room.roomId, room.players)) {
+                continue;
+            }
+            restoredRooms++;
+            restoredPlayers.addAndGet(room.players.size());
+            List<String> playerIds = room.players.stream().map(Player::getId).toList();
+            executor.schedule(() -> gameSessionService.dropUnclaimedPlayers(room.roomId, playerIds),
+                    reclaimTtlMs, TimeUnit.MILLISECONDS);
+        }
+        log.info("Restored {} rooms and {} players from checkpoint {} ({} ms old)", restoredRooms,
+                restoredPlayers.get(), path, age);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public long getCheckpointsWritten() {
+        return checkpointsWritten.get();
+    }
+
+    public long getRestoredPlayers() {
+        return restoredPlayers.get();
+    }
+
+    private static final class RoomState {
+        private final String roomId;
+        private final List<Player> players;
+
+        private RoomState(String roomId, List<Player> players) {
+            this.roomId = roomId;
+            this.players = players;
+        }
+
+        // Runs on the room's event loop; copies what a restore needs
+        private static RoomState of(Room room) {
+            List<Player> players = new ArrayList<>(room.getPlayers().size());
+            for (Player player : room.getPlayers().values()) {
+                Player copy = new Player();
+                copy.setId(player.getId());
+                copy.setUsername(player.getUsername());
+                copy.setColor(player.getColor());
+                copy.setX(player.getX());
+                copy.setY(player.getY());
+                copy.setDirection(player.getDirection());
+                // Restored players stand still until their client moves them
+                copy.setIsMoving(false);
+                players.add(copy);
+            }
+            return new RoomState(room.getId(), players);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.logging.SampledLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serial executor that makes a room's state single-writer. Tasks submitted from
+ * any thread run one at a time, in submission order, on a shared worker pool, so
+ * different rooms still run in parallel across cores while each room's state is
+ * only ever touched by one thread at a time and needs no locks.
+ */
+public class RoomEventLoop implements Executor {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomEventLoop.class);
+    // Shared by every room's loop; a task that keeps failing must not flood the log
+    private static final SampledLogger failureLog = new SampledLogger(log, 1, 10);
+
+    // Bounded drain so one busy room cannot hold a worker thread indefinitely
+    private static final int MAX_TASKS_PER_DRAIN = 256;
+
+    private final String roomId;
+    private final Executor workers;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile Thread runningThread;
+
+    public RoomEventLoop(String roomId, Executor workers) {
+        this.roomId = roomId;
+        this.workers = workers;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mailbox.offer(task);
+        schedule();
+    }
+
+    /**
+     * True when called from a task currently running on this loop.
+     */
+    public boolean inEventLoop() {
+        return runningThread == Thread.currentThread();
+    }
+
+    public int pendingTasks() {
+        return mailbox.size();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            workers.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        runningThread = Thread.currentThread();
+        try {
+            Runnable task;
+            for (int i = 0; i < MAX_TASKS_PER_DRAIN && (task = mailbox.poll()) != null; i++) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failureLog.atError().addKeyValue("roomId", roomId).setCause(e).log("Task failed in room");
+                }
+            }
+        } finally {
+            runningThread = null;
+            scheduled.set(false);
+            if (!mailbox.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.model.Room;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Capacity and retention policy for rooms: a hard cap on live rooms, a per-room
+ * player cap, the soft player count at which joins overflow into another instance
+ * of the room, and an idle TTL after which a room nobody is in is reaped.
+ * GameSessionService enforces the decisions; this class owns the limits, the
+ * room slot count and the room metrics: total and largest estimated heap and
+ * player count across rooms, and per room only when
+ * {@code game.metrics.per-room.enabled} is set, since room ids are unbounded.
+ */
+@Component
+public class RoomLifecycleManager {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.room.max-rooms:1000}")
+    private int maxRooms = 1000;
+
+    @Value("${game.room.max-players:250}")
+    private int maxPlayersPerRoom = 250;
+
+    // New joiners go to an overflow instance once an instance has this many players
+    @Value("${game.room.instance-threshold:100}")
+    private int instanceThreshold = 100;
+
+    @Value("${game.room.max-instances:16}")
+    private int maxInstances = 16;
+
+    // A room with no players for this long is closed, e.g. one created by a join nobody followed up
+    @Value("${game.room.idle-ttl-ms:300000}")
+    private long idleTtlMs = 300000;
+
+    @Value("${game.room.reap-interval-ms:10000}")
+    private long reapIntervalMs = 10000;
+
+    // One series per room id; meant for debugging a single node, not for production scraping
+    @Value("${game.metrics.per-room.enabled:false}")
+    private boolean perRoomMetrics = false;
+
+    private final AtomicInteger reservedRooms = new AtomicInteger();
+    private final AtomicLong reapedRooms = new AtomicLong();
+    private final AtomicLong rejectedRooms = new AtomicLong();
+    private final AtomicLong rejectedPlayers = new AtomicLong();
+    private final AtomicLong totalHeapBytes = new AtomicLong();
+    private final AtomicLong maxHeapBytes = new AtomicLong();
+    private MultiGauge roomHeapBytes;
+    private MultiGauge roomPlayers;
+    // The live rooms as of the last publish, for the player gauges
+    private volatile Collection<Room> publishedRooms = List.of();
+
+    @PostConstruct
+    void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("game.rooms.active", reservedRooms, AtomicInteger::get)
+                .description("Live rooms, bounded by game.room.max-rooms")
+                .register(meterRegistry);
+        Gauge.builder("game.rooms.heap.estimated.total", totalHeapBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("game.rooms.heap.estimated.max", maxHeapBytes, AtomicLong::get)
+                .description("Estimated retained heap of the largest room")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("game.players.active", this, manager -> totalPlayers(manager.publishedRooms))
+                .description("Players in all rooms, connected or waiting to be reclaimed")
+                .register(meterRegistry);
+        Gauge.builder("game.room.players.max", this, manager -> maxPlayers(manager.publishedRooms))
+                .description("Players in the most crowded room")
+                .register(meterRegistry);
+        if (perRoomMetrics) {
+            roomHeapBytes = MultiGauge.builder("game.rooms.heap.estimated")
+                    .description("Estimated retained heap per room")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            roomPlayers = MultiGauge.builder("game.room.players")
+                    .description("Players per room")
+                    .register(meterRegistry);
+        }
+        FunctionCounter.builder("game.rooms.reaped", reapedRooms, AtomicLong::get)
+                .register(meterRegistry);
+        FunctionCounter.builder("game.rooms.rejected", rejectedRooms, AtomicLong::get)
+                .tag("reason", "room-limit")
+                .register(meterRegistry);
+        FunctionCounter.builder("game.rooms.rejected", rejectedPlayers, AtomicLong::get)
+                .tag("reason", "room-full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Claims a room slot, or returns false when {@code max-rooms} rooms are live.
+     * Every successful call must be paired with {@link #releaseRoom()}.
+     */
+    public boolean tryReserveRoom() {
+        while (true) {
+            int current = reservedRooms.get();
+            if (current >= maxRooms) {
+                rejectedRooms.incrementAndGet();
+                return false;
+            }
+            if (reservedRooms.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void releaseRoom() {
+        reservedRooms.decrementAndGet();
+    }
+
+    public boolean isFull(Room room) {
+        return room.getPlayers().size() >= maxPlayersPerRoom;
+    }
+
+    public boolean isCrowded(Room room) {
+        return room.getPlayers().size() >= instanceThreshold;
+    }
+
+    public int getMaxInstances() {
+        return maxInstances;
+    }
+
+    public void playerRejected() {
+        rejectedPlayers.incrementAndGet();
+    }
+
+    public boolean isIdle(Room room, long now) {
+        return room.getPlayers().isEmpty() && now - room.getLastOccupiedAt() >= idleTtlMs;
+    }
+
+    public void roomReaped() {
+        reapedRooms.incrementAndGet();
+    }
+
+    /**
+     * Refreshes the heap gauges from the rooms' last estimates and the set of
+     * rooms the player count gauges read; player counts are read live.
+     */
+    public void publish(Collection<Room> rooms) {
+        long total = 0;
+        long max = 0;
+        for (Room room : rooms) {
+            long bytes = room.getEstimatedHeapBytes();
+            total += bytes;
+            max = Math.max(max, bytes);
+        }
+        totalHeapBytes.set(total);
+        maxHeapBytes.set(max);
+        publishedRooms = rooms;
+        if (roomHeapBytes == null) {
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(rooms.size());
+        List<MultiGauge.Row<?>> playerRows = new ArrayList<>(rooms.size());
+        for (Room room : rooms) {
+            rows.add(MultiGauge.Row.of(Tags.of("room", room.getId()), room.getEstimatedHeapBytes()));
+            playerRows.add(MultiGauge.Row.of(Tags.of("room", room.getId()), room, r -> r.getPlayers().size()));
+        }
+        roomHeapBytes.register(rows, true);
+        roomPlayers.register(playerRows, true);
+    }
+
+    private static double totalPlayers(Collection<Room> rooms) {
+        long players = 0;
+        for (Room room : rooms) {
+            players += room.getPlayers().size();
+        }
+        return players;
+    }
+
+    private static double maxPlayers(Collection<Room> rooms) {
+        int max = 0;
+        for (Room room : rooms) {
+            max = Math.max(max, room.getPlayers().size());
+        }
+        return max;
+    }
+
+    public int getMaxPlayersPerRoom() {
+        return maxPlayersPerRoom;
+    }
+
+    public long getReapIntervalMs() {
+        return reapIntervalMs;
+    }
+
+    public int getReservedRoomCount() {
+        return reservedRooms.get();
+    }
+}
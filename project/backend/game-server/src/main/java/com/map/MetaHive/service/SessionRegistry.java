@@ -0,0 +1,216 @@
+package com.map.MetaHive.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Tracks connected STOMP sessions and the player each one registered. Every
+ * inbound frame, STOMP heartbeats included, refreshes the session's last-seen
+ * time. Sessions that disconnect, or that stay silent past the idle timeout, are
+ * handed out by {@link #drainEvictions} so their players can be removed in one
+ * batch per room instead of one room task per event.
+ * <p>
+ * Sessions also carry their negotiated movement protocol: a session that opted
+ * into binary frames receives its room's binary deltas on its own user queue.
+ */
+@Component
+public class SessionRegistry implements ChannelInterceptor {
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, SessionInfo> sessions = new ConcurrentHashMap<>();
+    private final Queue<SessionInfo> disconnected = new ConcurrentLinkedQueue<>();
+    private final AtomicLong disconnectEvictions = new AtomicLong();
+    private final AtomicLong idleEvictions = new AtomicLong();
+    // Lets ticks skip the per-player protocol lookup while no session uses binary frames
+    private final AtomicInteger binarySessions = new AtomicInteger();
+
+    @PostConstruct
+    void registerMetrics() {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("game.sessions.active", sessions, Map::size)
+                .description("Connected STOMP sessions")
+                .register(meterRegistry);
+        FunctionCounter.builder("game.sessions.evicted", disconnectEvictions, AtomicLong::get)
+                .tag("reason", "disconnect")
+                .register(meterRegistry);
+        FunctionCounter.builder("game.sessions.evicted", idleEvictions, AtomicLong::get)
+                .tag("reason", "idle")
+                .register(meterRegistry);
+    }
+
+    @EventListener
+    public void onSessionConnect(SessionConnectEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) {
+            sessions.putIfAbsent(sessionId, new SessionInfo(sessionId));
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        disconnected(event.getSessionId());
+    }
+
+    // Inbound channel: any frame from the client, heartbeats included, proves it is alive
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId != null) {
+            SessionInfo session = sessions.get(sessionId);
+            if (session != null) {
+                session.lastSeen = System.nanoTime();
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Records which player a session controls, replacing any earlier binding.
+     */
+    public void bindPlayer(String sessionId, String roomId, String playerId) {
+        SessionInfo session = sessions.computeIfAbsent(sessionId, SessionInfo::new);
+        session.bind(roomId, playerId);
+    }
+
+    public void disconnected(String sessionId) {
+        SessionInfo session = sessions.remove(sessionId);
+        if (session != null && session.binaryProtocol) {
+            binarySessions.decrementAndGet();
+        }
+        if (session != null && session.getRoomId() != null) {
+            disconnected.offer(session);
+        }
+    }
+
+    /**
+     * Hands out every bound session that disconnected since the last call or has
+     * not sent anything for {@code idleTimeoutMs}. Idle sessions stay registered
+     * but lose their player binding, so they are only evicted once.
+     */
+    public void drainEvictions(long idleTimeoutMs, Consumer<SessionInfo> eviction) {
+        SessionInfo session;
+        while ((session = disconnected.poll()) != null) {
+            disconnectEvictions.incrementAndGet();
+            eviction.accept(session);
+        }
+        long now = System.nanoTime();
+        long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        for (SessionInfo candidate : sessions.values()) {
+            if (candidate.getRoomId() != null && now - candidate.lastSeen > idleTimeoutNanos) {
+                SessionInfo idle = candidate.unbind();
+                if (idle != null) {
+                    idleEvictions.incrementAndGet();
+                    eviction.accept(idle);
+                }
+            }
+        }
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Opts a connected session into binary movement frames. Returns false if the
+     * session is not connected.
+     */
+    public boolean enableBinaryProtocol(String sessionId) {
+        SessionInfo session = sessions.get(sessionId);
+        if (session == null) {
+            return false;
+        }
+        if (session.enableBinaryProtocol()) {
+            binarySessions.incrementAndGet();
+        }
+        return true;
+    }
+
+    public boolean usesBinaryProtocol(String sessionId) {
+        SessionInfo session = sessions.get(sessionId);
+        return session != null && session.binaryProtocol;
+    }
+
+    public boolean hasBinarySessions() {
+        return binarySessions.get() > 0;
+    }
+
+    public static final class SessionInfo {
+        private final String sessionId;
+        private volatile long lastSeen = System.nanoTime();
+        private volatile boolean binaryProtocol;
+        private String roomId;
+        private String playerId;
+
+        private SessionInfo(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private SessionInfo(String sessionId, String roomId, String playerId) {
+            this.sessionId = sessionId;
+            this.roomId = roomId;
+            this.playerId = playerId;
+        }
+
+        private synchronized void bind(String roomId, String playerId) {
+            this.roomId = roomId;
+            this.playerId = playerId;
+            this.lastSeen = System.nanoTime();
+        }
+
+        // True only for the call that switched the session over
+        private synchronized boolean enableBinaryProtocol() {
+            if (binaryProtocol) {
+                return false;
+            }
+            binaryProtocol = true;
+            return true;
+        }
+
+        // Snapshot of the current binding, cleared atomically
+        private synchronized SessionInfo unbind() {
+            if (roomId == null) {
+                return null;
+            }
+            SessionInfo binding = new SessionInfo(sessionId, roomId, playerId);
+            roomId = null;
+            playerId = null;
+            return binding;
+        }
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public synchronized String getRoomId() {
+            return roomId;
+        }
+
+        public synchronized String getPlayerId() {
+            return playerId;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.map.MetaHive.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes room snapshots to JSON bytes once per tick so the same buffer can be
+ * handed to every destination without going through the message converter again.
+ * Encoded arrays are shared between messages and must never be modified.
+ */
+@Component
+public class SnapshotEncoder {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode snapshot", e);
+        }
+    }
+
+    /**
+     * Wraps pre-encoded JSON in a message. Only the headers are allocated per call;
+     * the payload array is shared.
+     */
+    public Message<byte[]> toMessage(byte[] payload, String sessionId) {
+        return MessageBuilder.createMessage(payload, jsonHeaders(sessionId).getMessageHeaders());
+    }
+
+    /**
+     * Like {@link #toMessage(byte[], String)}, but tagged as a snapshot of the given
+     * room so the outbound flow control can coalesce or shed it for slow sessions.
+     */
+    public Message<byte[]> toSnapshotMessage(byte[] payload, String roomId, boolean keyframe, String sessionId) {
+        SimpMessageHeaderAccessor accessor = jsonHeaders(sessionId);
+        accessor.setHeader(OutboundFlowControl.ROOM_HEADER, roomId);
+        accessor.setHeader(OutboundFlowControl.KEYFRAME_HEADER, keyframe);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private static SimpMessageHeaderAccessor jsonHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        if (sessionId != null) {
+            accessor.setSessionId(sessionId);
+        }
+        accessor.setLeaveMutable(true);
+        return accessor;
+    }
+
+    /**
+     * Per-tick cache of encoded player records, so a player that appears in many
+     * per-client deltas is serialized only once.
+     */
+    public PlayerFragments newPlayerFragments() {
+        return new PlayerFragments();
+    }
+
+    public final class PlayerFragments {
+        private final Map<String, byte[]> fragments = new HashMap<>();
+
+        private PlayerFragments() {
+        }
+
+        public byte[] get(Player player) {
+            return fragments.computeIfAbsent(player.getId(), id -> encode(player));
+        }
+
+        /**
+         * Assembles a JSON document with the same shape as {@link com.map.MetaHive.model.RoomDelta}
+         * from cached player records.
+         */
+        public byte[] composeDelta(String roomId, long tick, long serverTime, boolean keyframe,
+                                   List<Player> joined, List<Player> updated, List<String> left) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 + 128 * (joined.size() + updated.size()));
+            write(out, "{\"roomId\":");
+            out.writeBytes(encode(roomId));
+            write(out, ",\"tick\":" + tick + ",\"serverTime\":" + serverTime
+                    + ",\"keyframe\":" + keyframe + ",\"joined\":");
+            writePlayers(out, joined);
+            write(out, ",\"updated\":");
+            writePlayers(out, updated);
+            write(out, ",\"left\":");
+            out.writeBytes(encode(left));
+            write(out, "}");
+            return out.toByteArray();
+        }
+
+        private void writePlayers(ByteArrayOutputStream out, List<Player> players) {
+            out.write('[');
+            for (int i = 0; i < players.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.writeBytes(get(players.get(i)));
+            }
+            out.write(']');
+        }
+
+        private void write(ByteArrayOutputStream out, String text) {
+            out.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
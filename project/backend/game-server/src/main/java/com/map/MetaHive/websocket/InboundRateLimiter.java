@@ -0,0 +1,219 @@
+package com.map.MetaHive.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token-bucket rate limits on the client inbound channel. Every SEND and
+ * SUBSCRIBE of a session draws from the session's bucket, and every SEND also
+ * from the bucket of its destination, keyed by the last path segment after
+ * {@code /app} ({@code move}, {@code move.bin}, {@code createRoom}, ...).
+ * Destinations without a configured limit share the {@code other} limit.
+ * <p>
+ * Frames over a limit are dropped here, on the transport thread, before they
+ * reach the inbound executor, so a flooding client cannot occupy the threads
+ * that dispatch {@code @MessageMapping} methods for everyone else. A session
+ * that has {@code disconnect-after-violations} frames dropped within
+ * {@code violation-window-ms} is closed.
+ * <p>
+ * Admitted frames are counted per destination key as {@code game.inbound.messages},
+ * whether or not limits are enabled, and dropped ones as {@code game.inbound.throttled}.
+ */
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(InboundRateLimiter.class);
+
+    static final String OTHER = "other";
+    static final String SUBSCRIBE = "subscribe";
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired(required = false)
+    private OutboundFlowControl outboundFlowControl;
+
+    @Value("${game.ratelimit.enabled:true}")
+    private boolean enabled = true;
+
+    // Limits are perSecond/burst
+    @Value("${game.ratelimit.session:120/120}")
+    private String sessionLimit = "120/120";
+
+    // Comma-separated destination=perSecond/burst entries
+    @Value("${game.ratelimit.destinations:move=60/30,move.bin=60/30,register=2/5,createRoom=0.2/3,joinRoom=1/5,history=2/5,other=20/40}")
+    private String destinationLimits = "move=60/30,move.bin=60/30,register=2/5,createRoom=0.2/3,joinRoom=1/5,history=2/5,other=20/40";
+
+    @Value("${game.ratelimit.disconnect-after-violations:200}")
+    private int disconnectAfterViolations = 200;
+
+    @Value("${game.ratelimit.violation-window-ms:10000}")
+    private long violationWindowMs = 10000;
+
+    private double[] sessionRate;
+    private final Map<String, double[]> destinationRates = new HashMap<>();
+    private final Map<String, SessionLimits> sessions = new ConcurrentHashMap<>();
+    // Keys are bounded by the configured destinations plus "subscribe"
+    private final Map<String, AtomicLong> received = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> throttled = new ConcurrentHashMap<>();
+    private Counter abusiveDisconnects;
+
+    @PostConstruct
+    void parseLimits() {
+        sessionRate = parseRate(sessionLimit);
+        destinationRates.clear();
+        for (String entry : destinationLimits.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int separator = entry.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected destination=perSecond/burst in game.ratelimit.destinations: " + entry);
+            }
+            destinationRates.put(entry.substring(0, separator).trim(), parseRate(entry.substring(separator + 1)));
+        }
+        destinationRates.putIfAbsent(OTHER, parseRate("20/40"));
+        if (meterRegistry != null) {
+            abusiveDisconnects = Counter.builder("game.inbound.sessions.disconnected")
+                    .description("Sessions closed for repeatedly exceeding inbound rate limits")
+                    .register(meterRegistry);
+        }
+    }
+
+    private static double[] parseRate(String limit) {
+        String[] parts = limit.trim().split("/");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected perSecond/burst: " + limit);
+        }
+        return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type != SimpMessageType.MESSAGE && type != SimpMessageType.SUBSCRIBE) {
+            // CONNECT, DISCONNECT and heartbeats are never limited
+            return message;
+        }
+        String key = type == SimpMessageType.MESSAGE
+                ? destinationKey(SimpMessageHeaderAccessor.getDestination(message.getHeaders()))
+                : SUBSCRIBE;
+        if (enabled && !admit(message, type, key)) {
+            return null;
+        }
+        counter(received, "game.inbound.messages", key).incrementAndGet();
+        return message;
+    }
+
+    private boolean admit(Message<?> message, SimpMessageType type, String key) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        SessionLimits limits = sessions.computeIfAbsent(sessionId, id -> new SessionLimits(sessionRate, now));
+        boolean allowed = limits.session.tryAcquire(now);
+        if (allowed && type == SimpMessageType.MESSAGE) {
+            allowed = limits.destinations.computeIfAbsent(key, k -> {
+                double[] rate = destinationRates.get(k);
+                return new TokenBucket(rate[0], rate[1], now);
+            }).tryAcquire(now);
+        }
+        if (allowed) {
+            return true;
+        }
+        counter(throttled, "game.inbound.throttled", key).incrementAndGet();
+        if (limits.violation(now, TimeUnit.MILLISECONDS.toNanos(violationWindowMs)) == disconnectAfterViolations) {
+            disconnect(sessionId);
+        }
+        return false;
+    }
+
+    // "/app/rooms/ABC123/move.bin" -> "move.bin"; unknown destinations share one limit
+    String destinationKey(String destination) {
+        if (destination == null) {
+            return OTHER;
+        }
+        String key = destination.substring(destination.lastIndexOf('/') + 1);
+        return destinationRates.containsKey(key) ? key : OTHER;
+    }
+
+    private AtomicLong counter(Map<String, AtomicLong> counts, String name, String key) {
+        return counts.computeIfAbsent(key, k -> {
+            AtomicLong count = new AtomicLong();
+            if (meterRegistry != null) {
+                FunctionCounter.builder(name, count, AtomicLong::get)
+                        .tag("destination", k)
+                        .register(meterRegistry);
+            }
+            return count;
+        });
+    }
+
+    private void disconnect(String sessionId) {
+        log.warn("Disconnecting session {} for exceeding inbound rate limits", sessionId);
+        if (abusiveDisconnects != null) {
+            abusiveDisconnects.increment();
+        }
+        if (outboundFlowControl != null) {
+            outboundFlowControl.closeSession(sessionId, CloseStatus.POLICY_VIOLATION);
+        }
+    }
+
+    public long getReceivedCount(String key) {
+        AtomicLong count = received.get(key);
+        return count != null ? count.get() : 0;
+    }
+
+    public long getThrottledCount(String key) {
+        AtomicLong count = throttled.get(key);
+        return count != null ? count.get() : 0;
+    }
+
+    private static final class SessionLimits {
+        private final TokenBucket session;
+        private final Map<String, TokenBucket> destinations = new ConcurrentHashMap<>();
+        private int violations;
+        private long windowStart;
+
+        private SessionLimits(double[] rate, long now) {
+            this.session = new TokenBucket(rate[0], rate[1], now);
+            this.windowStart = now;
+        }
+
+        // Counts a dropped frame and returns the number dropped in the current window
+        private synchronized int violation(long now, long windowNanos) {
+            if (now - windowStart > windowNanos) {
+                windowStart = now;
+                violations = 0;
+            }
+            return ++violations;
+        }
+    }
+}
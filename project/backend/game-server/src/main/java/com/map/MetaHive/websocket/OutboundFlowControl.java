@@ -0,0 +1,396 @@
+package com.map.MetaHive.websocket;
+
+import com.map.MetaHive.logging.SampledLogger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-session flow control on the client outbound channel, so one slow client
+ * cannot make the server buffer an unbounded backlog of snapshots for it.
+ * <ul>
+ *   <li>A room snapshot still waiting in the outbound queue is dropped once a newer
+ *   keyframe for the same room is queued for the same session, since the keyframe
+ *   replaces everything before it.</li>
+ *   <li>A session is lagging while more than {@code max-queued-per-session} messages
+ *   are queued for it or a write to its socket has been blocked for longer than
+ *   {@code downgrade-after-ms}. Lagging sessions are downgraded to keyframes only:
+ *   deltas are shed and the client resyncs from the next periodic keyframe.</li>
+ *   <li>A session that stays lagging for {@code disconnect-after-ms} is closed.</li>
+ * </ul>
+ * Queued deltas are not merged with each other. A delta carries only the changes
+ * of its own tick, and it is encoded once for every subscriber, so a newer delta
+ * cannot stand in for an older one without decoding and re-encoding it for each
+ * session. A run of deltas is therefore delivered in order until the session
+ * counts as lagging; from then on they are shed, and the next keyframe resyncs
+ * the client.
+ * Snapshots are recognised by the {@link #ROOM_HEADER} that {@code RoomBroadcaster}
+ * puts on them; every other message (join results, errors) is always delivered.
+ */
+@Component
+public class OutboundFlowControl implements ExecutorChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundFlowControl.class);
+    // Sessions can flap in and out of lagging once per tick under load
+    private static final SampledLogger laggingLog = new SampledLogger(log, 1, 10);
+
+    // Set on room snapshots; internal headers are not written to the STOMP frame
+    public static final String ROOM_HEADER = "gameRoomId";
+    public static final String KEYFRAME_HEADER = "gameKeyframe";
+    private static final String SEQUENCE_HEADER = "gameOutboundSeq";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${game.outbound.max-queued-per-session:64}")
+    private int maxQueuedPerSession = 64;
+
+    @Value("${game.outbound.downgrade-after-ms:250}")
+    private long downgradeAfterMs = 250;
+
+    @Value("${game.outbound.disconnect-after-ms:10000}")
+    private long disconnectAfterMs = 10000;
+
+    private final Map<String, SessionOutbound> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private Counter coalescedFrames;
+    private Counter shedFrames;
+    private Counter slowConsumerDisconnects;
+    private Counter nativeBytes;
+    private Counter sockJsBytes;
+    private Counter nativeMessages;
+    private Counter sockJsMessages;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("game.outbound.queue.depth", sessions, OutboundFlowControl::totalQueued)
+                .description("Messages queued on the client outbound channel for all sessions")
+                .register(meterRegistry);
+        Gauge.builder("game.outbound.queue.depth.max", sessions, OutboundFlowControl::maxQueued)
+                .description("Deepest outbound queue of any single session")
+                .register(meterRegistry);
+        Gauge.builder("game.outbound.sessions.lagging", sessions, OutboundFlowControl::laggingSessions)
+                .description("Sessions currently downgraded to keyframes only")
+                .register(meterRegistry);
+        Gauge.builder("game.websocket.sessions", sessions, map -> sessionsOverTransport(map, false))
+                .tag("transport", "native")
+                .description("Open sessions on the plain WebSocket endpoint")
+                .register(meterRegistry);
+        Gauge.builder("game.websocket.sessions", sessions, map -> sessionsOverTransport(map, true))
+                .tag("transport", "sockjs")
+                .description("Open sessions on the SockJS endpoint, any SockJS transport")
+                .register(meterRegistry);
+        coalescedFrames = Counter.builder("game.outbound.frames.dropped")
+                .tag("reason", "superseded")
+                .description("Queued snapshots replaced by a newer keyframe")
+                .register(meterRegistry);
+        shedFrames = Counter.builder("game.outbound.frames.dropped")
+                .tag("reason", "lagging")
+                .description("Deltas not sent because the session was lagging")
+                .register(meterRegistry);
+        slowConsumerDisconnects = Counter.builder("game.outbound.sessions.disconnected")
+                .description("Sessions closed for staying behind too long")
+                .register(meterRegistry);
+        nativeBytes = outboundBytes("native");
+        sockJsBytes = outboundBytes("sockjs");
+        nativeMessages = outboundMessages("native");
+        sockJsMessages = outboundMessages("sockjs");
+    }
+
+    private Counter outboundBytes(String transport) {
+        return Counter.builder("game.outbound.bytes")
+                .tag("transport", transport)
+                .description("Payload bytes written to client sockets, STOMP frames included")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private Counter outboundMessages(String transport) {
+        return Counter.builder("game.outbound.messages")
+                .tag("transport", transport)
+                .description("WebSocket messages written to client sockets")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Decorator for the STOMP WebSocket handler that registers each session and
+     * times writes to its socket.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                boolean sockJs = session instanceof SockJsSession;
+                SessionOutbound outbound = new SessionOutbound(session,
+                        sockJs ? sockJsBytes : nativeBytes, sockJs ? sockJsMessages : nativeMessages);
+                sessions.put(session.getId(), outbound);
+                super.afterConnectionEstablished(new TimedSession(session, outbound));
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    // Runs on the broker thread, in publish order
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SessionOutbound outbound = trackedSession(message.getHeaders());
+        if (outbound == null) {
+            return message;
+        }
+        if (outbound.closing.get()) {
+            shedFrames.increment();
+            return null;
+        }
+        String roomId = (String) message.getHeaders().get(ROOM_HEADER);
+        if (roomId == null) {
+            outbound.queued.incrementAndGet();
+            return message;
+        }
+        boolean keyframe = isKeyframe(message.getHeaders());
+        if (!keyframe && isLagging(outbound)) {
+            shedFrames.increment();
+            return null;
+        }
+        long seq = sequence.incrementAndGet();
+        if (keyframe) {
+            outbound.latestKeyframes.merge(roomId, seq, Math::max);
+        }
+        outbound.queued.incrementAndGet();
+        MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+        accessor.setHeader(SEQUENCE_HEADER, seq);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    // Runs on an outbound channel thread just before the message is written to the session
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        SessionOutbound outbound = trackedSession(message.getHeaders());
+        if (outbound == null) {
+            return message;
+        }
+        outbound.queued.decrementAndGet();
+        Long seq = (Long) message.getHeaders().get(SEQUENCE_HEADER);
+        if (seq == null) {
+            return message;
+        }
+        if (outbound.closing.get()) {
+            shedFrames.increment();
+            return null;
+        }
+        Long latestKeyframe = outbound.latestKeyframes.get((String) message.getHeaders().get(ROOM_HEADER));
+        if (latestKeyframe != null && seq < latestKeyframe) {
+            coalescedFrames.increment();
+            return null;
+        }
+        if (!isKeyframe(message.getHeaders()) && isLagging(outbound)) {
+            shedFrames.increment();
+            return null;
+        }
+        return message;
+    }
+
+    public int getQueuedMessages(String sessionId) {
+        SessionOutbound outbound = sessions.get(sessionId);
+        return outbound != null ? outbound.queued.get() : 0;
+    }
+
+    /**
+     * True for a session on the plain WebSocket endpoint. SockJS sessions carry
+     * text frames only, so binary payloads cannot reach them intact.
+     */
+    public boolean isNativeWebSocket(String sessionId) {
+        SessionOutbound outbound = sessions.get(sessionId);
+        return outbound != null && !(outbound.session instanceof SockJsSession);
+    }
+
+    public boolean isLagging(String sessionId) {
+        SessionOutbound outbound = sessions.get(sessionId);
+        return outbound != null && outbound.lagging;
+    }
+
+    private SessionOutbound trackedSession(MessageHeaders headers) {
+        if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return null;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    private static boolean isKeyframe(MessageHeaders headers) {
+        return Boolean.TRUE.equals(headers.get(KEYFRAME_HEADER));
+    }
+
+    /**
+     * Re-evaluates whether the session is behind and closes it once it has been
+     * behind for longer than the disconnect threshold.
+     */
+    private boolean isLagging(SessionOutbound outbound) {
+        long now = System.nanoTime();
+        boolean behind = outbound.queued.get() >= maxQueuedPerSession
+                || outbound.blockedWriteNanos(now) > TimeUnit.MILLISECONDS.toNanos(downgradeAfterMs);
+        if (!behind) {
+            outbound.lagging = false;
+            return false;
+        }
+        if (!outbound.lagging) {
+            outbound.laggingSince = now;
+            outbound.lagging = true;
+            laggingLog.atInfo().addKeyValue("sessionId", outbound.session.getId())
+                    .addKeyValue("queued", outbound.queued.get())
+                    .log("Session is lagging, sending keyframes only");
+        } else if (now - outbound.laggingSince > TimeUnit.MILLISECONDS.toNanos(disconnectAfterMs)) {
+            disconnect(outbound);
+        }
+        return true;
+    }
+
+    private void disconnect(SessionOutbound outbound) {
+        if (close(outbound, CloseStatus.SESSION_NOT_RELIABLE)) {
+            slowConsumerDisconnects.increment();
+            log.warn("Disconnected slow consumer {}", outbound.session.getId());
+        }
+    }
+
+    /**
+     * Closes the WebSocket of a session, e.g. one that keeps breaking inbound rate
+     * limits. Returns false if the session is unknown or already being closed.
+     */
+    public boolean closeSession(String sessionId, CloseStatus status) {
+        SessionOutbound outbound = sessions.get(sessionId);
+        return outbound != null && close(outbound, status);
+    }
+
+    private boolean close(SessionOutbound outbound, CloseStatus status) {
+        if (!outbound.closing.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            outbound.session.close(status);
+        } catch (IOException e) {
+            log.warn("Failed to close session {}: {}", outbound.session.getId(), e.getMessage());
+        }
+        return true;
+    }
+
+    private static double totalQueued(Map<String, SessionOutbound> sessions) {
+        long total = 0;
+        for (SessionOutbound outbound : sessions.values()) {
+            total += outbound.queued.get();
+        }
+        return total;
+    }
+
+    private static double maxQueued(Map<String, SessionOutbound> sessions) {
+        int max = 0;
+        for (SessionOutbound outbound : sessions.values()) {
+            max = Math.max(max, outbound.queued.get());
+        }
+        return max;
+    }
+
+    private static double sessionsOverTransport(Map<String, SessionOutbound> sessions, boolean sockJs) {
+        int count = 0;
+        for (SessionOutbound outbound : sessions.values()) {
+            if ((outbound.session instanceof SockJsSession) == sockJs) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static double laggingSessions(Map<String, SessionOutbound> sessions) {
+        int lagging = 0;
+        for (SessionOutbound outbound : sessions.values()) {
+            if (outbound.lagging) {
+                lagging++;
+            }
+        }
+        return lagging;
+    }
+
+    private static final class SessionOutbound {
+        private final WebSocketSession session;
+        private final Counter sentBytes;
+        private final Counter sentMessages;
+        private final AtomicInteger queued = new AtomicInteger();
+        // Sequence of the newest keyframe queued per room
+        private final Map<String, Long> latestKeyframes = new ConcurrentHashMap<>();
+        private final AtomicBoolean closing = new AtomicBoolean();
+        private volatile boolean writing;
+        private volatile long writeStartedAt;
+        private volatile boolean lagging;
+        private volatile long laggingSince;
+
+        private SessionOutbound(WebSocketSession session, Counter sentBytes, Counter sentMessages) {
+            this.session = session;
+            this.sentBytes = sentBytes;
+            this.sentMessages = sentMessages;
+        }
+
+        private long blockedWriteNanos(long now) {
+            return writing ? now - writeStartedAt : 0;
+        }
+    }
+
+    /**
+     * Sits under Spring's concurrent session decorator, so sendMessage here is the
+     * actual, serialized write to the socket.
+     */
+    private static final class TimedSession extends WebSocketSessionDecorator {
+        private final SessionOutbound outbound;
+
+        private TimedSession(WebSocketSession session, SessionOutbound outbound) {
+            super(session);
+            this.outbound = outbound;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            outbound.writeStartedAt = System.nanoTime();
+            outbound.writing = true;
+            try {
+                super.sendMessage(message);
+            } finally {
+                outbound.writing = false;
+            }
+            outbound.sentBytes.increment(message.getPayloadLength());
+            outbound.sentMessages.increment();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.map.MetaHive.websocket;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether WebSocket sessions use the permessage-deflate extension every
+ * browser offers. The servlet container accepts the offer on its own, and then
+ * compresses every frame separately for every session: a room broadcast to N
+ * players is deflated N times. Snapshots are small and already compact, so
+ * unless {@code game.websocket.permessage-deflate} is set the offer is removed
+ * from handshake requests before the container sees it.
+ */
+public class PerMessageDeflateFilter extends OncePerRequestFilter {
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final boolean permessageDeflate;
+
+    public PerMessageDeflateFilter(boolean permessageDeflate) {
+        this.permessageDeflate = permessageDeflate;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return permessageDeflate || request.getHeader(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        List<WebSocketExtension> offered = new ArrayList<>();
+        for (String value : Collections.list(request.getHeaders(WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS))) {
+            offered.addAll(WebSocketExtension.parseExtensions(value));
+        }
+        String kept = offered.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .map(WebSocketExtension::toString)
+                .collect(Collectors.joining(", "));
+        chain.doFilter(new ExtensionsRequest(request, kept.isEmpty() ? null : kept), response);
+    }
+
+    private static final class ExtensionsRequest extends HttpServletRequestWrapper {
+        private final String extensions;
+
+        private ExtensionsRequest(HttpServletRequest request, String extensions) {
+            super(request);
+            this.extensions = extensions;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isExtensions(name) ? extensions : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            if (!isExtensions(name)) {
+                return super.getHeaders(name);
+            }
+            return Collections.enumeration(extensions != null ? List.of(extensions) : List.of());
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = Collections.list(super.getHeaderNames());
+            if (extensions == null) {
+                names.removeIf(ExtensionsRequest::isExtensions);
+            }
+            return Collections.enumeration(names);
+        }
+
+        private static boolean isExtensions(String name) {
+            return WebSocketHttpHeaders.SEC_WEBSOCKET_EXTENSIONS.equalsIgnoreCase(name);
+        }
+    }
+}
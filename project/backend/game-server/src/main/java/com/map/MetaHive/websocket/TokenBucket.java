@@ -0,0 +1,37 @@
+package com.map.MetaHive.websocket;
+
+/**
+ * Classic token bucket: holds up to {@code burst} tokens and refills at
+ * {@code perSecond}, so a client may send short bursts but not exceed the
+ * rate on average. Time is passed in, in nanoseconds, to keep it testable.
+ */
+public final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(double perSecond, double burst, long now) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Need a positive rate and a burst of at least 1: "
+                    + perSecond + "/" + burst);
+        }
+        this.tokensPerNano = perSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    public synchronized boolean tryAcquire(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+}
@@ -3,7 +3,8 @@ package com.map.MetaHive;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Checkpoints are off so test runs neither restore nor leave rooms behind
+@SpringBootTest(properties = "game.checkpoint.enabled=false")
 class MetaHiveApplicationTests {
 
 	@Test
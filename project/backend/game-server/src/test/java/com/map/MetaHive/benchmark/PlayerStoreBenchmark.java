@@ -0,0 +1,113 @@
+package com.map.MetaHive.benchmark;
+
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.PlayerStateStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iteration and update cost of the room's {@code Map<String, Player>} versus the
+ * struct-of-arrays {@link PlayerStateStore}. Iteration sums positions the way a
+ * snapshot encoder walks every player; update writes one new position per player
+ * the way a tick applies movement.
+ *
+ * <pre>./mvnw -Pbenchmark test -Dbenchmark.include=PlayerStoreBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayerStoreBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int players;
+
+    private Map<String, Player> playerMap;
+    private PlayerStateStore store;
+    private String[] ids;
+    private int[] handles;
+    private float step;
+
+    @Setup
+    public void setUp() {
+        playerMap = new ConcurrentHashMap<>();
+        store = new PlayerStateStore();
+        ids = new String[players];
+        handles = new int[players];
+        for (int i = 0; i < players; i++) {
+            String id = UUID.randomUUID().toString();
+            Player player = new Player();
+            player.setId(id);
+            player.setX(i);
+            player.setY(i);
+            player.setDirection("down");
+            playerMap.put(id, player);
+            ids[i] = id;
+            handles[i] = store.add(id);
+            store.set(handles[i], i, i, (byte) 0);
+        }
+    }
+
+    @Benchmark
+    public double mapIterate() {
+        double sum = 0;
+        for (Player player : playerMap.values()) {
+            sum += player.getX() + player.getY();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double storeIterate() {
+        double sum = 0;
+        int highWater = store.highWater();
+        for (int handle = 1; handle <= highWater; handle++) {
+            if (store.isLive(handle)) {
+                sum += store.x(handle) + store.y(handle);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void mapUpdateById() {
+        step++;
+        for (String id : ids) {
+            Player player = playerMap.get(id);
+            player.setX(step);
+            player.setY(step);
+        }
+    }
+
+    @Benchmark
+    public void storeUpdateById() {
+        step++;
+        for (String id : ids) {
+            store.set(store.handleOf(id), step, step, (byte) 0);
+        }
+    }
+
+    @Benchmark
+    public void storeUpdateByHandle() {
+        step++;
+        for (int handle : handles) {
+            store.set(handle, step, step, (byte) 0);
+        }
+    }
+}
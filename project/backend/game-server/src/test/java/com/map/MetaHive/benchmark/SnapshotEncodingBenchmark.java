@@ -0,0 +1,99 @@
+package com.map.MetaHive.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.service.SnapshotEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of delivering one room snapshot to every player in the room: converting
+ * the payload through the message converter for each send (what
+ * convertAndSend / convertAndSendToUser do) versus encoding once and wrapping
+ * the shared bytes per send.
+ *
+ * <pre>./mvnw -Pbenchmark test -Dbenchmark.include=SnapshotEncodingBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotEncodingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int players;
+
+    private Map<String, Player> snapshot;
+    private List<String> sessionIds;
+    private MappingJackson2MessageConverter converter;
+    private SnapshotEncoder snapshotEncoder;
+
+    @Setup
+    public void setUp() {
+        snapshot = new ConcurrentHashMap<>();
+        sessionIds = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            Player player = new Player();
+            player.setId(UUID.randomUUID().toString());
+            player.setUsername("player-" + i);
+            player.setRoomId("ABC123");
+            player.setHandle(i + 1);
+            player.setX(400 + i);
+            player.setY(300 + i);
+            player.setDirection("down");
+            player.setAnimation("idle-down");
+            player.setTimestamp(System.currentTimeMillis());
+            snapshot.put(player.getId(), player);
+            sessionIds.add("session-" + i);
+        }
+        converter = new MappingJackson2MessageConverter();
+        snapshotEncoder = new SnapshotEncoder();
+        ReflectionTestUtils.setField(snapshotEncoder, "objectMapper", new ObjectMapper());
+    }
+
+    @Benchmark
+    public void convertPerSend(Blackhole blackhole) {
+        for (String sessionId : sessionIds) {
+            blackhole.consume(converter.toMessage(snapshot, sessionHeaders(sessionId)));
+        }
+    }
+
+    @Benchmark
+    public void encodeOnceSendMany(Blackhole blackhole) {
+        byte[] payload = snapshotEncoder.encode(snapshot);
+        for (String sessionId : sessionIds) {
+            blackhole.consume(snapshotEncoder.toMessage(payload, sessionId));
+        }
+    }
+
+    private static MessageHeaders sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+}
@@ -0,0 +1,66 @@
+package com.map.MetaHive.cluster;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomPlacementTest {
+
+    @Test
+    void withoutClusterConfig_LocalNodeShouldOwnEveryRoom() {
+        RoomPlacement placement = placement("local", "");
+
+        assertFalse(placement.isClustered());
+        assertTrue(placement.isLocal("ABC123"));
+        assertEquals("local", placement.ownerOf("ZZZZZZ"));
+    }
+
+    @Test
+    void rooms_ShouldSpreadEvenlyAndAgreeAcrossNodes() {
+        String nodes = "node-a=ws://a/ws,node-b=ws://b/ws,node-c=ws://c/ws";
+        RoomPlacement onA = placement("node-a", nodes);
+        RoomPlacement onB = placement("node-b", nodes);
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 30_000; i++) {
+            String roomId = "R" + i;
+            String owner = onA.ownerOf(roomId);
+            assertEquals(owner, onB.ownerOf(roomId));
+            counts.merge(owner, 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertTrue(count > 7_000 && count < 13_000, "unbalanced: " + counts));
+        assertEquals("ws://b/ws", onA.urlOf("node-b"));
+        assertEquals(onA.ownerOf("R42"), onA.ownerOf("R42~3"));
+    }
+
+    @Test
+    void addingNode_ShouldOnlyMoveRoomsToTheNewNode() {
+        RoomPlacement before = placement("node-a", "node-a=ws://a/ws,node-b=ws://b/ws");
+        RoomPlacement after = placement("node-a", "node-a=ws://a/ws,node-b=ws://b/ws,node-c=ws://c/ws");
+
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String roomId = "R" + i;
+            String oldOwner = before.ownerOf(roomId);
+            String newOwner = after.ownerOf(roomId);
+            if (!oldOwner.equals(newOwner)) {
+                assertEquals("node-c", newOwner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 2_000 && moved < 4_700, "moved " + moved);
+    }
+
+    private static RoomPlacement placement(String nodeId, String nodes) {
+        RoomPlacement placement = new RoomPlacement();
+        ReflectionTestUtils.setField(placement, "nodeId", nodeId);
+        ReflectionTestUtils.setField(placement, "nodes", nodes);
+        ReflectionTestUtils.invokeMethod(placement, "buildRing");
+        return placement;
+    }
+}
@@ -0,0 +1,256 @@
+package com.map.MetaHive.controller;
+
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.protocol.BinaryMovementCodec;
+import com.map.MetaHive.service.GameSessionService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "game.checkpoint.enabled=false")
+class PlayerControllerTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private GameSessionService gameSessionService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private WebSocketStompClient stompClient;
+
+    @BeforeEach
+    void setUp() {
+        stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stompClient.stop();
+    }
+
+    @Test
+    void createRoom_ShouldReplyOnlyToRequestingSession() throws Exception {
+        StompSession requester = connect();
+        StompSession bystander = connect();
+        BlockingQueue<Map<String, Object>> requesterReplies = subscribe(requester, "/user/queue/roomCreated");
+        BlockingQueue<Map<String, Object>> bystanderReplies = subscribe(bystander, "/user/queue/roomCreated");
+        // Give the broker time to register both subscriptions
+        Thread.sleep(200);
+
+        requester.send("/app/createRoom", Map.of("username", "alice"));
+
+        Map<String, Object> reply = requesterReplies.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reply);
+        assertEquals(true, reply.get("success"));
+        assertNotNull(reply.get("roomId"));
+        assertNull(bystanderReplies.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void disconnect_ShouldEvictTheSessionsPlayer() throws Exception {
+        String roomId = gameSessionService.createRoom();
+        StompSession owner = connect();
+        StompSession player = connect();
+        owner.send("/app/register", Map.of("id", "owner", "roomId", roomId, "username", "owner"));
+        player.send("/app/register", Map.of("id", "ghost", "roomId", roomId, "username", "ghost"));
+        awaitPlayerCount(roomId, 2);
+
+        player.disconnect();
+
+        awaitPlayerCount(roomId, 1);
+        assertNotNull(gameSessionService.getPlayerById(roomId, "owner"));
+    }
+
+    @Test
+    void nativeEndpoint_ShouldServeStompWithoutSockJs() throws Exception {
+        WebSocketStompClient nativeClient = new WebSocketStompClient(new StandardWebSocketClient());
+        nativeClient.setMessageConverter(new MappingJackson2MessageConverter());
+        try {
+            StompSession session = nativeClient.connectAsync("ws://localhost:" + port + "/ws-native",
+                    new StompSessionHandlerAdapter() {
+                    }).get(5, TimeUnit.SECONDS);
+            BlockingQueue<Map<String, Object>> replies = subscribe(session, "/user/queue/roomCreated");
+            Thread.sleep(200);
+
+            session.send("/app/createRoom", Map.of("username", "alice"));
+
+            Map<String, Object> reply = replies.poll(5, TimeUnit.SECONDS);
+            assertNotNull(reply);
+            assertEquals(true, reply.get("success"));
+            assertTrue(meterRegistry.get("game.websocket.sessions").tag("transport", "native").gauge().value() >= 1);
+        } finally {
+            nativeClient.stop();
+        }
+    }
+
+    @Test
+    void binaryProtocol_ShouldRoundTripMovesForTheNegotiatingSessionOnly() throws Exception {
+        String roomId = gameSessionService.createRoom();
+        WebSocketStompClient nativeClient = new WebSocketStompClient(new StandardWebSocketClient());
+        nativeClient.setMessageConverter(new CompositeMessageConverter(
+                List.of(new ByteArrayMessageConverter(), new MappingJackson2MessageConverter())));
+        try {
+            StompSession session = nativeClient.connectAsync("ws://localhost:" + port + "/ws-native",
+                    new StompSessionHandlerAdapter() {
+                    }).get(5, TimeUnit.SECONDS);
+            StompSession jsonPeer = connect();
+            BlockingQueue<Map<String, Object>> protocolReplies = subscribe(session, "/user/queue/protocol");
+            BlockingQueue<byte[]> frames = subscribeBinary(session, "/user/queue/rooms/" + roomId + "/delta.bin");
+            BlockingQueue<byte[]> peerFrames = subscribeBinary(jsonPeer, "/user/queue/rooms/" + roomId + "/delta.bin");
+            Thread.sleep(200);
+            session.send("/app/register", Map.of("id", "bin", "roomId", roomId, "username", "bin"));
+            jsonPeer.send("/app/register", Map.of("id", "peer", "roomId", roomId, "username", "peer"));
+            awaitPlayerCount(roomId, 2);
+
+            session.send("/app/rooms/" + roomId + "/protocol", Map.of("protocol", "binary"));
+            Map<String, Object> reply = protocolReplies.poll(5, TimeUnit.SECONDS);
+            assertNotNull(reply);
+            assertEquals(true, reply.get("success"));
+
+            Player spawned = gameSessionService.getPlayerById(roomId, "bin");
+            Player move = new Player();
+            move.setHandle(spawned.getHandle());
+            move.setX(spawned.getX() + 4);
+            move.setY(spawned.getY());
+            move.setDirection("right");
+            move.setIsMoving(true);
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination("/app/rooms/" + roomId + "/move.bin");
+            headers.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+            session.send(headers, BinaryMovementCodec.encodeMove(move));
+
+            Player echoed = null;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (echoed == null && System.currentTimeMillis() < deadline) {
+                byte[] frame = frames.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                List<Player> updated = new ArrayList<>();
+                BinaryMovementCodec.decodeDelta(frame, updated, new ArrayList<>());
+                echoed = updated.stream().filter(p -> p.getHandle() == move.getHandle() && p.getIsMoving())
+                        .findFirst().orElse(null);
+            }
+            assertNotNull(echoed);
+            assertEquals(move.getX(), echoed.getX(), 0.25);
+            assertEquals("right", echoed.getDirection());
+            // The SockJS session never negotiated binary, so it gets none of the room's binary frames
+            assertTrue(peerFrames.isEmpty());
+        } finally {
+            nativeClient.stop();
+        }
+    }
+
+    @Test
+    void binaryProtocol_ShouldBeRefusedOverSockJs() throws Exception {
+        String roomId = gameSessionService.createRoom();
+        StompSession session = connect();
+        BlockingQueue<Map<String, Object>> protocolReplies = subscribe(session, "/user/queue/protocol");
+        Thread.sleep(200);
+
+        session.send("/app/rooms/" + roomId + "/protocol", Map.of("protocol", "binary"));
+
+        Map<String, Object> reply = protocolReplies.poll(5, TimeUnit.SECONDS);
+        assertNotNull(reply);
+        assertEquals(false, reply.get("success"));
+        assertEquals("json", reply.get("protocol"));
+        assertNotNull(reply.get("error"));
+    }
+
+    @Test
+    void handshake_ShouldDeclinePerMessageDeflateByDefault() throws Exception {
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension("permessage-deflate")));
+        WebSocketSession session = new StandardWebSocketClient().execute(new AbstractWebSocketHandler() {
+        }, headers, URI.create("ws://localhost:" + port + "/ws-native")).get(5, TimeUnit.SECONDS);
+        try {
+            assertTrue(session.getExtensions().isEmpty());
+        } finally {
+            session.close();
+        }
+    }
+
+    private void awaitPlayerCount(String roomId, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (gameSessionService.getRoom(roomId).getPlayers().size() != expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(expected, gameSessionService.getRoom(roomId).getPlayers().size());
+    }
+
+    private StompSession connect() throws Exception {
+        return stompClient.connectAsync("ws://localhost:" + port + "/ws", new StompSessionHandlerAdapter() {
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    private static BlockingQueue<byte[]> subscribeBinary(StompSession session, String destination) {
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((byte[]) payload);
+            }
+        });
+        return received;
+    }
+
+    private static BlockingQueue<Map<String, Object>> subscribe(StompSession session, String destination) {
+        BlockingQueue<Map<String, Object>> received = new LinkedBlockingQueue<>();
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return Map.class;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add((Map<String, Object>) payload);
+            }
+        });
+        return received;
+    }
+}
@@ -0,0 +1,116 @@
+package com.map.MetaHive.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void segments_ShouldRoundTripAndEachStartWithKeyframe() throws Exception {
+        JournalSegmentWriter writer = new JournalSegmentWriter(dir.resolve("ROOM01"), 256);
+        writer.append(frame(1, 50, List.of(new JournalFrame.Join(1, "p1", "alice"), new JournalFrame.Join(2, "p2", null)),
+                new int[]{1, 2}, new int[]{400, 800}, new int[]{400, 800}, new int[0]));
+        for (int tick = 2; tick <= 60; tick++) {
+            writer.append(frame(tick, tick * 50L, List.of(), new int[]{2, 1},
+                    new int[]{800 - tick, 400 + tick * 4}, new int[]{800, 400 - tick * 4}, new int[0]));
+        }
+        writer.append(frame(61, 3050, List.of(), new int[0], new int[0], new int[0], new int[]{2}));
+        writer.close();
+        assertTrue(writer.getSegmentCount() > 1);
+
+        List<JournalFrame> frames = new ArrayList<>();
+        JournalReader reader = JournalReader.forRoom(dir, "ROOM01");
+        assertEquals(61, reader.read(frames::add));
+        assertEquals(writer.getSegmentCount(), frames.stream().filter(JournalFrame::isKeyframe).count());
+
+        Map<Integer, int[]> positions = new HashMap<>();
+        Map<Integer, String> ids = new HashMap<>();
+        for (JournalFrame frame : frames) {
+            if (frame.isKeyframe()) {
+                positions.clear();
+                ids.clear();
+            }
+            for (int handle : frame.getLeftHandles()) {
+                positions.remove(handle);
+                ids.remove(handle);
+            }
+            frame.getJoined().forEach(join -> ids.put(join.getHandle(), join.getPlayerId()));
+            for (int i = 0; i < frame.getUpdateCount(); i++) {
+                positions.put(frame.getHandle(i), new int[]{frame.getX(i), frame.getY(i)});
+            }
+        }
+        JournalFrame last = frames.get(frames.size() - 1);
+        assertEquals(61, last.getTick());
+        assertEquals(3050, last.getServerTime());
+        assertEquals(Map.of(1, "p1"), ids);
+        assertArrayEquals(new int[]{400 + 60 * 4, 400 - 60 * 4}, positions.get(1));
+    }
+
+    @Test
+    void walkingPlayer_ShouldCostAFewBytesPerTick() throws Exception {
+        JournalSegmentWriter writer = new JournalSegmentWriter(dir.resolve("ROOM01"), 64 * 1024);
+        writer.append(frame(1, 50, List.of(new JournalFrame.Join(1, "p1", "alice")),
+                new int[]{1}, new int[]{4000}, new int[]{4000}, new int[0]));
+
+        int bytes = writer.append(frame(2, 100, List.of(), new int[]{1}, new int[]{4012}, new int[]{3996}, new int[0]));
+        writer.close();
+
+        // length, type, tick, time, left, joins, count, handle, dx, dy, state
+        assertEquals(11, bytes);
+    }
+
+    @Test
+    void tornRecord_ShouldEndSegmentWithoutFailing() throws Exception {
+        JournalSegmentWriter writer = new JournalSegmentWriter(dir.resolve("ROOM01"), 64 * 1024);
+        for (int tick = 1; tick <= 5; tick++) {
+            writer.append(frame(tick, tick * 50L, tick == 1 ? List.of(new JournalFrame.Join(1, "p1", "alice")) : List.of(),
+                    new int[]{1}, new int[]{tick}, new int[]{tick}, new int[0]));
+        }
+        writer.close();
+        Path segment = JournalReader.forRoom(dir, "ROOM01").segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        assertEquals(4, JournalReader.forRoom(dir, "ROOM01").read(frame -> { }));
+    }
+
+    @Test
+    void roomJournal_ShouldWriteOnItsOwnThreadAndFinishOnStop() throws Exception {
+        RoomJournal journal = new RoomJournal();
+        ReflectionTestUtils.setField(journal, "enabled", true);
+        ReflectionTestUtils.setField(journal, "directory", dir.toString());
+        journal.start();
+
+        journal.record("ROOM01", frame(1, 50, List.of(new JournalFrame.Join(1, "p1", "alice")),
+                new int[]{1}, new int[]{10}, new int[]{20}, new int[0]));
+        journal.record("../escape", frame(1, 50, List.of(), new int[0], new int[0], new int[0], new int[0]));
+        journal.closeRoom("ROOM01");
+        journal.stop();
+
+        assertEquals(1, journal.getFramesWritten());
+        List<JournalFrame> frames = new ArrayList<>();
+        JournalReader.forRoom(dir, "ROOM01").replay(100, frames::add);
+        assertEquals(1, frames.size());
+        assertEquals("alice", frames.get(0).getJoined().get(0).getUsername());
+    }
+
+    private static JournalFrame frame(long tick, long serverTime, List<JournalFrame.Join> joined,
+                                      int[] handles, int[] xs, int[] ys, int[] left) {
+        return new JournalFrame(tick, serverTime, false, joined, handles, xs, ys, new byte[handles.length], left);
+    }
+}
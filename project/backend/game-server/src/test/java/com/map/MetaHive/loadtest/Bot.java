@@ -0,0 +1,304 @@
+package com.map.MetaHive.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One simulated player: joins a room the way the web client does, then walks in
+ * straight lines of random length and direction with pauses in between, sending
+ * a sequenced move at the scenario's input rate while walking.
+ * <p>
+ * The server acknowledges inputs with the {@code ack} of the player's record in
+ * the room broadcast, so the time from sending move {@code seq} to the first
+ * broadcast acknowledging it is the move-to-broadcast latency. When the server
+ * rejects a move (into a wall, too fast) its broadcast carries the authoritative
+ * position; the bot continues from there in a new direction.
+ */
+final class Bot extends StompSessionHandlerAdapter {
+
+    private static final String[] DIRECTIONS = {"up", "down", "left", "right"};
+    // Inputs still waiting for their ack; older ones count as lost
+    private static final int IN_FLIGHT = 256;
+
+    private final String playerId;
+    private final String logicalRoomId;
+    private final LoadScenario scenario;
+    private final Counters counters;
+
+    private volatile StompSession session;
+    private volatile String roomId;
+    private volatile boolean recording;
+
+    // Guarded by this: written by the movement thread and the session's receive thread
+    private boolean spawned;
+    private double x;
+    private double y;
+    private String direction = "down";
+    private boolean moving;
+    private boolean announcedStop = true;
+    private long phaseEndsAt;
+    private long seq;
+    private long lastAck;
+    private final long[] sentSeq = new long[IN_FLIGHT];
+    private final long[] sentAt = new long[IN_FLIGHT];
+    private final double[] sentX = new double[IN_FLIGHT];
+    private final double[] sentY = new double[IN_FLIGHT];
+    private final boolean[] sentRecorded = new boolean[IN_FLIGHT];
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+
+    Bot(int index, String logicalRoomId, LoadScenario scenario, Counters counters) {
+        this.playerId = "bot-" + index;
+        this.logicalRoomId = logicalRoomId;
+        this.scenario = scenario;
+        this.counters = counters;
+    }
+
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        session.subscribe("/user/queue/joinResult", new JsonHandler(this::onJoinResult));
+        session.send("/app/joinRoom", Map.of("roomId", logicalRoomId, "playerId", playerId, "username", playerId));
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                                byte[] payload, Throwable exception) {
+        counters.transportErrors.incrementAndGet();
+        System.out.println(playerId + " could not handle " + command + " " + headers.getDestination()
+                + ": " + exception);
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        counters.transportErrors.incrementAndGet();
+    }
+
+    private void onJoinResult(JsonNode result) {
+        if (roomId != null) {
+            return;
+        }
+        if (!result.path("success").asBoolean()) {
+            counters.joinFailures.incrementAndGet();
+            System.out.println(playerId + " could not join " + logicalRoomId + ": " + result);
+            return;
+        }
+        String instanceId = result.path("roomId").asText();
+        roomId = instanceId;
+        session.subscribe("/topic/rooms/" + instanceId + "/players", new JsonHandler(this::onKeyframe));
+        session.subscribe("/user/queue/rooms/" + instanceId + "/players", new JsonHandler(this::onKeyframe));
+        session.subscribe("/topic/rooms/" + instanceId + "/delta", new JsonHandler(this::onDelta));
+        session.send("/app/register", Map.of("id", playerId, "roomId", instanceId,
+                "username", playerId, "direction", direction));
+        counters.joined.incrementAndGet();
+    }
+
+    // Every player of the room, keyed by player id
+    private void onKeyframe(JsonNode players) {
+        long receivedAt = System.nanoTime();
+        counters.broadcasts.incrementAndGet();
+        JsonNode own = players.get(playerId);
+        if (own != null) {
+            onOwnState(own, receivedAt);
+        }
+    }
+
+    private void onDelta(JsonNode delta) {
+        long receivedAt = System.nanoTime();
+        counters.broadcasts.incrementAndGet();
+        JsonNode own = find(delta.path("updated"));
+        if (own == null) {
+            own = find(delta.path("joined"));
+        }
+        if (own != null) {
+            onOwnState(own, receivedAt);
+        }
+    }
+
+    private JsonNode find(JsonNode players) {
+        for (JsonNode player : players) {
+            if (playerId.equals(player.path("id").asText())) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void onOwnState(JsonNode state, long receivedAt) {
+        double serverX = state.path("x").asDouble();
+        double serverY = state.path("y").asDouble();
+        if (!spawned) {
+            spawned = true;
+            x = serverX;
+            y = serverY;
+            return;
+        }
+        long ack = state.path("ack").asLong();
+        if (ack <= lastAck) {
+            return;
+        }
+        // The room applies only the latest input of each tick; earlier ones are superseded
+        for (long skipped = Math.max(lastAck + 1, ack - IN_FLIGHT + 1); skipped < ack; skipped++) {
+            int skippedSlot = (int) (skipped % IN_FLIGHT);
+            if (sentSeq[skippedSlot] == skipped && sentRecorded[skippedSlot] && recording) {
+                counters.superseded.incrementAndGet();
+            }
+        }
+        lastAck = ack;
+        int slot = (int) (ack % IN_FLIGHT);
+        if (sentSeq[slot] != ack) {
+            return;
+        }
+        if (sentRecorded[slot] && recording) {
+            recordLatency(receivedAt - sentAt[slot]);
+            counters.acked.incrementAndGet();
+        }
+        // Positions come back quantized, so only a clear difference means the move was refused
+        if (Math.abs(serverX - sentX[slot]) > 1 || Math.abs(serverY - sentY[slot]) > 1) {
+            counters.rejected.incrementAndGet();
+            x = serverX;
+            y = serverY;
+            phaseEndsAt = 0;
+        }
+    }
+
+    /**
+     * Advances the bot by one input interval and sends its move. Runs on the
+     * swarm's movement threads at the scenario's input rate.
+     */
+    synchronized void step() {
+        StompSession current = session;
+        if (!spawned || current == null || !current.isConnected()) {
+            return;
+        }
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (now >= phaseEndsAt) {
+            moving = random.nextDouble() >= scenario.getIdleFraction();
+            if (moving) {
+                direction = DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+            }
+            phaseEndsAt = now + random.nextLong(1_000_000_000L, 4_000_000_000L);
+        }
+        if (!moving) {
+            // One input to stop, then nothing until the next walk, like the web client
+            if (!announcedStop) {
+                announcedStop = true;
+                send(current, now, false);
+            }
+            return;
+        }
+        announcedStop = false;
+        double distance = scenario.getSpeedPxPerSecond() / scenario.getMoveRateHz();
+        switch (direction) {
+            case "up" -> y -= distance;
+            case "down" -> y += distance;
+            case "left" -> x -= distance;
+            default -> x += distance;
+        }
+        send(current, now, true);
+    }
+
+    private void send(StompSession current, long now, boolean walking) {
+        long next = ++seq;
+        int slot = (int) (next % IN_FLIGHT);
+        sentSeq[slot] = next;
+        sentAt[slot] = now;
+        sentX[slot] = x;
+        sentY[slot] = y;
+        sentRecorded[slot] = recording;
+        Map<String, Object> move = new HashMap<>();
+        move.put("id", playerId);
+        move.put("roomId", roomId);
+        move.put("username", playerId);
+        move.put("x", x);
+        move.put("y", y);
+        move.put("direction", direction);
+        move.put("isMoving", walking);
+        move.put("animation", (walking ? "run-" : "idle-") + direction);
+        move.put("timestamp", System.currentTimeMillis());
+        move.put("seq", next);
+        current.send("/app/move", move);
+        if (recording) {
+            counters.movesSent.incrementAndGet();
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencyCount * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    String getPlayerId() {
+        return playerId;
+    }
+
+    void startRecording() {
+        recording = true;
+    }
+
+    synchronized void stopRecording() {
+        recording = false;
+    }
+
+    synchronized long[] getLatencies() {
+        return Arrays.copyOf(latencies, latencyCount);
+    }
+
+    void leave() {
+        StompSession current = session;
+        if (current == null || !current.isConnected()) {
+            return;
+        }
+        if (roomId != null) {
+            current.send("/app/leaveRoom", Map.of("roomId", roomId, "playerId", playerId));
+        }
+        current.disconnect();
+    }
+
+    /**
+     * Swarm-wide totals, updated by every bot.
+     */
+    static final class Counters {
+        final AtomicLong joined = new AtomicLong();
+        final AtomicLong joinFailures = new AtomicLong();
+        final AtomicLong transportErrors = new AtomicLong();
+        final AtomicLong movesSent = new AtomicLong();
+        final AtomicLong acked = new AtomicLong();
+        final AtomicLong superseded = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong broadcasts = new AtomicLong();
+    }
+
+    private static final class JsonHandler implements StompFrameHandler {
+        private final Consumer<JsonNode> consumer;
+
+        private JsonHandler(Consumer<JsonNode> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return JsonNode.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            consumer.accept((JsonNode) payload);
+        }
+    }
+}
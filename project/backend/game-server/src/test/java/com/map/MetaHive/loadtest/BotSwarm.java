@@ -0,0 +1,223 @@
+package com.map.MetaHive.loadtest;
+
+import jakarta.websocket.ContainerProvider;
+import jakarta.websocket.WebSocketContainer;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.WebSocketClient;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Headless swarm of {@link Bot}s against a running game server. Bots connect
+ * at the scenario's ramp rate and spread over {@code players / players-per-room}
+ * rooms; once they have joined and warmed up, the swarm measures for the
+ * scenario's duration and reports the move-to-broadcast latency percentiles
+ * together with the server's CPU, allocation rate and GC pauses from its
+ * actuator metrics.
+ * <p>
+ * Start the server first, then run a scenario from {@code src/test/resources/loadtest}:
+ * <pre>
+ * ./mvnw spring-boot:run
+ * ./mvnw -Ploadtest test -Dloadtest.scenario=players-100 -Dloadtest.url=http://localhost:9502
+ * </pre>
+ * Bots parse every broadcast of their room, so at the larger scenarios the
+ * swarm itself needs a few cores; run it on another machine than the server
+ * when the server's CPU figures matter.
+ */
+public final class BotSwarm {
+
+    // Keyframes of a full room are a few tens of kilobytes
+    private static final int MAX_MESSAGE_BYTES = 1024 * 1024;
+    private static final long JOIN_TIMEOUT_MS = 60_000;
+
+    private final LoadScenario scenario;
+    private final Bot.Counters counters = new Bot.Counters();
+    private final AtomicLong connectFailures = new AtomicLong();
+    private final ServerMetrics serverMetrics;
+    private final List<ServerMetrics.Sample> samples = new ArrayList<>();
+
+    BotSwarm(LoadScenario scenario) {
+        this.scenario = scenario;
+        this.serverMetrics = new ServerMetrics(scenario.getUrl());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: BotSwarm <scenario name or .properties file> [key=value ...]");
+            System.exit(2);
+        }
+        LoadScenario scenario = LoadScenario.load(args[0],
+                Arrays.stream(args, 1, args.length).filter(arg -> !arg.isBlank()).toList());
+        new BotSwarm(scenario).run();
+        System.exit(0);
+    }
+
+    void run() throws InterruptedException {
+        int players = scenario.getPlayers();
+        int rooms = Math.max(1, (players + scenario.getPlayersPerRoom() - 1) / scenario.getPlayersPerRoom());
+        // Fresh room ids per run, so earlier runs' rooms and checkpointed players do not interfere
+        String runId = Long.toString(System.currentTimeMillis() % 1_000_000_000L, 36).toUpperCase();
+        System.out.printf("Scenario %s: %d bots in %d rooms over %s against %s%n",
+                scenario.getName(), players, rooms, scenario.getTransport(), scenario.getUrl());
+
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(2);
+        heartbeats.setThreadNamePrefix("bot-heartbeat-");
+        heartbeats.setDaemon(true);
+        heartbeats.initialize();
+        WebSocketStompClient stompClient = newStompClient(heartbeats);
+        ScheduledExecutorService movement = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                    Thread thread = new Thread(runnable, "bot-movement");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        long inputPeriodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / scenario.getMoveRateHz());
+
+        List<Bot> bots = new ArrayList<>(players);
+        long rampStart = System.nanoTime();
+        for (int i = 0; i < players; i++) {
+            Bot bot = new Bot(i, "LOAD-" + runId + "-" + (i % rooms), scenario, counters);
+            bots.add(bot);
+            stompClient.connectAsync(endpoint(), bot).exceptionally(failure -> {
+                connectFailures.incrementAndGet();
+                System.out.println(bot.getPlayerId() + " could not connect: " + failure.getMessage());
+                return null;
+            });
+            // Random phase, so inputs are spread over the interval instead of arriving in bursts
+            movement.scheduleAtFixedRate(bot::step, ThreadLocalRandom.current().nextLong(inputPeriodNanos),
+                    inputPeriodNanos, TimeUnit.NANOSECONDS);
+            long due = rampStart + TimeUnit.SECONDS.toNanos(i + 1) / scenario.getRampPerSecond();
+            TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+        }
+        awaitJoined(players);
+        System.out.printf("%d joined, %d join failures, %d connect failures after %.1f s%n",
+                counters.joined.get(), counters.joinFailures.get(), connectFailures.get(),
+                (System.nanoTime() - rampStart) / 1e9);
+
+        TimeUnit.SECONDS.sleep(scenario.getWarmupSeconds());
+        bots.forEach(Bot::startRecording);
+        long measureStart = System.nanoTime();
+        sampleServer();
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(scenario.getDurationSeconds());
+        long lastMoves = 0;
+        long lastReport = measureStart;
+        while (System.nanoTime() < measureEnd) {
+            long next = Math.min(measureEnd, lastReport + TimeUnit.SECONDS.toNanos(scenario.getSampleIntervalSeconds()));
+            TimeUnit.NANOSECONDS.sleep(next - System.nanoTime());
+            ServerMetrics.Sample sample = sampleServer();
+            long now = System.nanoTime();
+            long moves = counters.movesSent.get();
+            System.out.printf("  %5.1f s  %8.0f moves/s  server CPU %s%n", (now - measureStart) / 1e9,
+                    (moves - lastMoves) / ((now - lastReport) / 1e9),
+                    sample != null ? String.format("%.1f%%", sample.getCpuUsage() * 100) : "n/a");
+            lastMoves = moves;
+            lastReport = now;
+        }
+        bots.forEach(Bot::stopRecording);
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+
+        movement.shutdownNow();
+        bots.forEach(Bot::leave);
+        stompClient.stop();
+        heartbeats.shutdown();
+
+        report(bots, seconds);
+    }
+
+    private WebSocketStompClient newStompClient(ThreadPoolTaskScheduler heartbeats) {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(MAX_MESSAGE_BYTES);
+        container.setDefaultMaxBinaryMessageBufferSize(MAX_MESSAGE_BYTES);
+        WebSocketClient webSocketClient = new StandardWebSocketClient(container);
+        WebSocketStompClient stompClient = "sockjs".equals(scenario.getTransport())
+                ? new WebSocketStompClient(new SockJsClient(List.of(new WebSocketTransport(webSocketClient))))
+                : new WebSocketStompClient(webSocketClient);
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setInboundMessageSizeLimit(MAX_MESSAGE_BYTES);
+        // Same heartbeats as the web client, so the server's idle sweep leaves standing bots alone
+        stompClient.setTaskScheduler(heartbeats);
+        stompClient.setDefaultHeartbeat(new long[]{10000, 10000});
+        return stompClient;
+    }
+
+    private String endpoint() {
+        return "sockjs".equals(scenario.getTransport())
+                ? scenario.getUrl() + "/ws"
+                : scenario.getUrl().replaceFirst("^http", "ws") + "/ws-native";
+    }
+
+    private void awaitJoined(int players) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MS;
+        while (counters.joined.get() + counters.joinFailures.get() + connectFailures.get() < players
+                && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+    }
+
+    private ServerMetrics.Sample sampleServer() throws InterruptedException {
+        try {
+            ServerMetrics.Sample sample = serverMetrics.sample();
+            samples.add(sample);
+            return sample;
+        } catch (IOException e) {
+            System.out.println("Could not read server metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void report(List<Bot> bots, double seconds) {
+        long[] latencies = bots.stream().map(Bot::getLatencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        long sent = counters.movesSent.get();
+        long acked = counters.acked.get();
+        long superseded = counters.superseded.get();
+
+        System.out.println();
+        System.out.printf("Scenario %s, %d bots, measured %.1f s%n", scenario.getName(), scenario.getPlayers(), seconds);
+        System.out.printf("Moves sent          %d (%.0f/s), acknowledged %d, superseded %d, unacknowledged %d, rejected %d%n",
+                sent, sent / seconds, acked, superseded, Math.max(0, sent - acked - superseded), counters.rejected.get());
+        System.out.printf("Broadcasts received %d (%.0f/s), transport errors %d%n",
+                counters.broadcasts.get(), counters.broadcasts.get() / seconds, counters.transportErrors.get());
+        if (latencies.length == 0) {
+            System.out.println("Move to broadcast   no acknowledged moves");
+        } else {
+            System.out.printf("Move to broadcast   p50 %.1f ms  p90 %.1f ms  p99 %.1f ms  p99.9 %.1f ms  max %.1f ms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        }
+        if (samples.size() < 2) {
+            System.out.println("Server              no metrics; is /actuator/metrics exposed?");
+            return;
+        }
+        ServerMetrics.Sample first = samples.get(0);
+        ServerMetrics.Sample last = samples.get(samples.size() - 1);
+        double serverSeconds = (last.getTakenAt() - first.getTakenAt()) / 1e9;
+        List<ServerMetrics.Sample> measured = samples.subList(1, samples.size());
+        double averageCpu = measured.stream().mapToDouble(ServerMetrics.Sample::getCpuUsage).average().orElse(0);
+        double maxCpu = measured.stream().mapToDouble(ServerMetrics.Sample::getCpuUsage).max().orElse(0);
+        System.out.printf("Server CPU          avg %.1f%%  max %.1f%%  of %.0f cores (%.2f cores busy)%n",
+                averageCpu * 100, maxCpu * 100, last.getCpuCount(), averageCpu * last.getCpuCount());
+        System.out.printf("Server allocation   %.1f MB/s%n",
+                (last.getAllocatedBytes() - first.getAllocatedBytes()) / serverSeconds / (1024 * 1024));
+        System.out.printf("Server GC pauses    %.0f ms over the run%n",
+                (last.getGcPauseSeconds() - first.getGcPauseSeconds()) * 1000);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
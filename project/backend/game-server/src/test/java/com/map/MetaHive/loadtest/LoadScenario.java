@@ -0,0 +1,113 @@
+package com.map.MetaHive.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Settings of one load test run, read from {@code loadtest/{name}.properties}
+ * on the test classpath or from a properties file path. Any key can be
+ * overridden with a {@code key=value} argument after the scenario name.
+ */
+final class LoadScenario {
+
+    private final String name;
+    private final Properties properties;
+
+    private LoadScenario(String name, Properties properties) {
+        this.name = name;
+        this.properties = properties;
+    }
+
+    static LoadScenario load(String nameOrPath, List<String> overrides) {
+        Properties properties = new Properties();
+        Path path = Path.of(nameOrPath);
+        String name = nameOrPath;
+        try (InputStream in = Files.isRegularFile(path)
+                ? Files.newInputStream(path)
+                : LoadScenario.class.getResourceAsStream("/loadtest/" + nameOrPath + ".properties")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown load test scenario: " + nameOrPath);
+            }
+            properties.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (Files.isRegularFile(path)) {
+            name = path.getFileName().toString().replaceFirst("\\.properties$", "");
+        }
+        for (String override : overrides) {
+            int separator = override.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got: " + override);
+            }
+            properties.setProperty(override.substring(0, separator).trim(), override.substring(separator + 1).trim());
+        }
+        return new LoadScenario(name, properties);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    // Base http url of the server; the STOMP endpoints and actuator are resolved against it
+    String getUrl() {
+        return properties.getProperty("url", "http://localhost:9502").replaceFirst("/+$", "");
+    }
+
+    // "native" connects to /ws-native, "sockjs" to /ws over the SockJS WebSocket transport
+    String getTransport() {
+        return properties.getProperty("transport", "native");
+    }
+
+    int getPlayers() {
+        return getInt("players", 10);
+    }
+
+    int getPlayersPerRoom() {
+        return getInt("players-per-room", 50);
+    }
+
+    int getRampPerSecond() {
+        return getInt("ramp-per-second", 50);
+    }
+
+    int getWarmupSeconds() {
+        return getInt("warmup-s", 10);
+    }
+
+    int getDurationSeconds() {
+        return getInt("duration-s", 60);
+    }
+
+    double getMoveRateHz() {
+        return getDouble("move-rate-hz", 15);
+    }
+
+    double getSpeedPxPerSecond() {
+        return getDouble("speed-px-per-s", 120);
+    }
+
+    // Share of the time a bot stands still between walks
+    double getIdleFraction() {
+        return getDouble("idle-fraction", 0.3);
+    }
+
+    int getSampleIntervalSeconds() {
+        return getInt("sample-interval-s", 5);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return value != null ? Double.parseDouble(value.trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,96 @@
+package com.map.MetaHive.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Reads the server's own CPU, allocation and GC figures from its actuator
+ * metrics endpoint, so they are measured inside the server process rather than
+ * estimated from the load generator's machine.
+ */
+final class ServerMetrics {
+
+    private final String baseUrl;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    ServerMetrics(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    Sample sample() throws IOException, InterruptedException {
+        return new Sample(System.nanoTime(),
+                measurement("process.cpu.usage", "VALUE"),
+                measurement("system.cpu.count", "VALUE"),
+                // Micrometer adds up the young generation's growth at every GC
+                measurement("jvm.gc.memory.allocated", "COUNT"),
+                measurement("jvm.gc.pause", "TOTAL_TIME"));
+    }
+
+    private double measurement(String metric, String statistic) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + metric))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 404) {
+            // Not registered yet, e.g. no GC has happened since startup
+            return 0;
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + request.uri() + " returned " + response.statusCode());
+        }
+        for (JsonNode measurement : objectMapper.readTree(response.body()).path("measurements")) {
+            if (statistic.equals(measurement.path("statistic").asText())) {
+                return measurement.path("value").asDouble();
+            }
+        }
+        return 0;
+    }
+
+    static final class Sample {
+        private final long takenAt;
+        private final double cpuUsage;
+        private final double cpuCount;
+        private final double allocatedBytes;
+        private final double gcPauseSeconds;
+
+        private Sample(long takenAt, double cpuUsage, double cpuCount, double allocatedBytes, double gcPauseSeconds) {
+            this.takenAt = takenAt;
+            this.cpuUsage = cpuUsage;
+            this.cpuCount = cpuCount;
+            this.allocatedBytes = allocatedBytes;
+            this.gcPauseSeconds = gcPauseSeconds;
+        }
+
+        long getTakenAt() {
+            return takenAt;
+        }
+
+        // Share of all the machine's cores the server process used recently, 0 to 1
+        double getCpuUsage() {
+            return cpuUsage;
+        }
+
+        double getCpuCount() {
+            return cpuCount;
+        }
+
+        double getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        double getGcPauseSeconds() {
+            return gcPauseSeconds;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.map.MetaHive.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayerStateStoreTest {
+
+    @Test
+    void add_ShouldInternIdsToStableHandles() {
+        PlayerStateStore store = new PlayerStateStore();
+
+        int first = store.add("a");
+        int second = store.add("b");
+
+        assertEquals(1, first);
+        assertEquals(2, second);
+        assertEquals(first, store.add("a"));
+        assertEquals("b", store.idOf(second));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void remove_ShouldReuseHandlesOnlyAfterRecycle() {
+        PlayerStateStore store = new PlayerStateStore();
+        int handle = store.add("a");
+        store.add("b");
+
+        store.remove("a");
+        assertFalse(store.isLive(handle));
+        assertEquals(3, store.add("c"));
+
+        store.recycleReleased();
+        assertEquals(handle, store.add("d"));
+        assertEquals(3, store.highWater());
+    }
+
+    @Test
+    void set_ShouldGrowBeyondInitialCapacity() {
+        PlayerStateStore store = new PlayerStateStore();
+        for (int i = 0; i < 100; i++) {
+            int handle = store.add("p" + i);
+            store.set(handle, i, -i, (byte) (i & 7));
+        }
+
+        int handle = store.handleOf("p99");
+        assertEquals(99f, store.x(handle));
+        assertEquals(-99f, store.y(handle));
+        assertEquals(3, store.state(handle));
+        assertEquals(0, store.handleOf("missing"));
+    }
+}
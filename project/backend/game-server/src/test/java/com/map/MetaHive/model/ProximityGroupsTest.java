@@ -0,0 +1,94 @@
+package com.map.MetaHive.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProximityGroupsTest {
+
+    private ProximityGroups groups;
+    private Map<String, Player> players;
+
+    @BeforeEach
+    void setUp() {
+        groups = new ProximityGroups(100, 120);
+        players = new HashMap<>();
+    }
+
+    @Test
+    void update_ShouldGroupChainsOfNearbyPlayers() {
+        List<ProximityEvent> events = move("a", 0, 0, "b", 90, 0, "c", 180, 0, "d", 1000, 0);
+
+        String group = groups.getGroupId("a");
+        assertNotNull(group);
+        assertEquals(Set.of("a", "b", "c"), groups.getMembers(group));
+        assertNull(groups.getGroupId("d"));
+        assertEquals(3, events.size());
+        assertTrue(events.stream().allMatch(e -> e.getType().equals(ProximityEvent.ENTER)));
+    }
+
+    @Test
+    void update_ShouldOnlyReportPlayersWhoseGroupChanged() {
+        move("a", 0, 0, "b", 50, 0);
+        String group = groups.getGroupId("a");
+
+        // Moving within the leave radius keeps the link
+        assertTrue(move("b", 115, 0).isEmpty());
+        List<ProximityEvent> events = move("c", 200, 0);
+
+        assertEquals(List.of(ProximityEvent.ENTER + " " + group + " c"), events.stream().map(String::valueOf).toList());
+    }
+
+    @Test
+    void update_ShouldSplitGroupsAndDissolveSingletons() {
+        move("a", 0, 0, "b", 90, 0, "c", 180, 0, "e", 270, 0);
+        String group = groups.getGroupId("a");
+
+        // c walks away: a-b and e are no longer connected
+        List<ProximityEvent> events = move("c", 180, 1000);
+
+        assertEquals(group, groups.getGroupId("a"));
+        assertEquals(Set.of("a", "b"), groups.getMembers(group));
+        assertNull(groups.getGroupId("c"));
+        assertNull(groups.getGroupId("e"));
+        assertEquals(Set.of("leave " + group + " c", "leave " + group + " e"),
+                Set.copyOf(events.stream().map(String::valueOf).toList()));
+    }
+
+    @Test
+    void update_ShouldRemoveLeavingPlayers() {
+        move("a", 0, 0, "b", 50, 0);
+        String group = groups.getGroupId("a");
+        players.remove("b");
+
+        List<ProximityEvent> events = groups.update(List.of(), List.of("b"), players);
+
+        assertEquals(Set.of("leave " + group + " a", "leave " + group + " b"),
+                Set.copyOf(events.stream().map(String::valueOf).toList()));
+        assertEquals(0, groups.getGroupCount());
+    }
+
+    // Moves the given players (id, x, y triples) and runs one update
+    private List<ProximityEvent> move(Object... moves) {
+        List<String> moved = new ArrayList<>();
+        for (int i = 0; i < moves.length; i += 3) {
+            String id = (String) moves[i];
+            Player player = players.computeIfAbsent(id, key -> {
+                Player created = new Player();
+                created.setId(key);
+                return created;
+            });
+            player.setX(((Number) moves[i + 1]).doubleValue());
+            player.setY(((Number) moves[i + 2]).doubleValue());
+            moved.add(id);
+        }
+        return groups.update(moved, List.of(), players);
+    }
+}
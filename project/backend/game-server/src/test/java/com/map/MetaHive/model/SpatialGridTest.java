@@ -0,0 +1,79 @@
+package com.map.MetaHive.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialGridTest {
+
+    @Test
+    void query_ShouldReturnOnlyPlayersWithinRadius() {
+        SpatialGrid grid = new SpatialGrid(100);
+        grid.update("near", 110, 100);
+        grid.update("edge", 100, 150);
+        grid.update("far", 900, 900);
+
+        Set<String> found = new HashSet<>();
+        grid.query(100, 100, 50, found::add);
+
+        assertEquals(Set.of("near", "edge"), found);
+    }
+
+    @Test
+    void update_ShouldMovePlayerAcrossCells() {
+        SpatialGrid grid = new SpatialGrid(100);
+        grid.update("p1", 50, 50);
+        grid.update("p1", 850, 850);
+
+        Set<String> oldArea = new HashSet<>();
+        grid.query(50, 50, 60, oldArea::add);
+        Set<String> newArea = new HashSet<>();
+        grid.query(850, 850, 60, newArea::add);
+
+        assertTrue(oldArea.isEmpty());
+        assertEquals(Set.of("p1"), newArea);
+        assertEquals(1, grid.size());
+    }
+
+    @Test
+    void query_ShouldHandleNegativeCoordinates() {
+        SpatialGrid grid = new SpatialGrid(64);
+        grid.update("p1", -10, -10);
+
+        Set<String> found = new HashSet<>();
+        grid.query(5, 5, 30, found::add);
+
+        assertEquals(Set.of("p1"), found);
+    }
+
+    @Test
+    void remove_ShouldDropPlayer() {
+        SpatialGrid grid = new SpatialGrid(100);
+        grid.update("p1", 10, 10);
+        grid.remove("p1");
+
+        Set<String> found = new HashSet<>();
+        grid.query(10, 10, 100, found::add);
+
+        assertTrue(found.isEmpty());
+        assertFalse(grid.contains("p1"));
+    }
+
+    @Test
+    void anyCellInRange_ShouldMatchCellsOfChangedPlayersThatAQueryWouldScan() {
+        SpatialGrid grid = new SpatialGrid(100);
+        grid.update("near", 150, 50);
+        grid.update("far", 950, 950);
+        Set<Long> cells = new HashSet<>();
+
+        grid.collectCells(Set.of("far", "missing"), cells);
+        assertEquals(1, cells.size());
+        assertFalse(grid.anyCellInRange(50, 50, 60, cells));
+
+        grid.collectCells(Set.of("near"), cells);
+        assertTrue(grid.anyCellInRange(50, 50, 60, cells));
+    }
+}
@@ -0,0 +1,35 @@
+package com.map.MetaHive.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StateHistoryTest {
+
+    @Test
+    void record_ShouldKeepOnlyTheNewestEntriesOldestFirst() {
+        StateHistory history = new StateHistory(3);
+        for (int tick = 1; tick <= 5; tick++) {
+            history.record(tick, tick * 10, tick, -tick);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(3, history.tickAt(0));
+        assertEquals(5, history.tickAt(2));
+        assertEquals(50, history.seqAt(2));
+        assertEquals(-4, history.yAt(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> history.tickAt(3));
+    }
+
+    @Test
+    void indexAtOrBefore_ShouldFindTheStateConfirmedForAnInput() {
+        StateHistory history = new StateHistory(4);
+        history.record(1, 3, 0, 0);
+        history.record(2, 3, 1, 0);
+        history.record(3, 7, 2, 0);
+
+        assertEquals(1, history.indexAtOrBefore(5));
+        assertEquals(2, history.indexAtOrBefore(7));
+        assertEquals(-1, history.indexAtOrBefore(2));
+    }
+}
@@ -0,0 +1,31 @@
+package com.map.MetaHive.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WalkabilityGridTest {
+
+    @Test
+    void blockRect_ShouldBlockTilesWhoseCentreIsCovered() {
+        WalkabilityGrid grid = new WalkabilityGrid(10, 10, 16, 16);
+        // Covers the centres of columns 1-2 in row 0 only
+        grid.blockRect(20, 0, 22, 10);
+
+        assertEquals(2, grid.getBlockedTileCount());
+        assertTrue(grid.isWalkable(8, 8));
+        assertFalse(grid.isWalkable(16, 8));
+        assertFalse(grid.isWalkable(47.9, 0));
+        assertTrue(grid.isWalkable(48, 0));
+    }
+
+    @Test
+    void isWalkable_ShouldRejectPositionsOutsideTheMap() {
+        WalkabilityGrid grid = new WalkabilityGrid(10, 10, 16, 16);
+
+        assertFalse(grid.isWalkable(-0.5, 8));
+        assertFalse(grid.isWalkable(8, 160));
+        assertFalse(grid.isWalkable(Double.NaN, 8));
+        assertTrue(grid.isWalkable(159.9, 159.9));
+    }
+}
@@ -0,0 +1,65 @@
+package com.map.MetaHive.protocol;
+
+import com.map.MetaHive.model.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryMovementCodecTest {
+
+    @Test
+    void moveFrame_ShouldRoundTripInTenBytes() {
+        Player player = player(42, 400.4, 299.1, "left", true);
+
+        byte[] frame = BinaryMovementCodec.encodeMove(player);
+        Player decoded = new Player();
+
+        assertEquals(BinaryMovementCodec.MOVE_FRAME_SIZE, frame.length);
+        assertTrue(BinaryMovementCodec.decodeMove(frame, decoded));
+        assertEquals(42, decoded.getHandle());
+        // Quarter-pixel fixed point
+        assertEquals(400.5, decoded.getX());
+        assertEquals(299, decoded.getY());
+        assertEquals("left", decoded.getDirection());
+        assertTrue(decoded.getIsMoving());
+        assertEquals("run-left", decoded.getAnimation());
+    }
+
+    @Test
+    void decodeMove_ShouldRejectMalformedFrames() {
+        assertFalse(BinaryMovementCodec.decodeMove(new byte[3], new Player()));
+        assertFalse(BinaryMovementCodec.decodeMove(new byte[BinaryMovementCodec.MOVE_FRAME_SIZE], new Player()));
+        assertFalse(BinaryMovementCodec.decodeMove(null, new Player()));
+    }
+
+    @Test
+    void deltaFrame_ShouldRoundTripPlayersAndLeftHandles() {
+        byte[] frame = BinaryMovementCodec.encodeDelta(7, 1234,
+                List.of(player(1, 10, 20, "up", false), player(2, -40000, 40000, "right", true)),
+                List.of(9));
+
+        List<Player> updated = new ArrayList<>();
+        List<Integer> left = new ArrayList<>();
+        BinaryMovementCodec.decodeDelta(frame, updated, left);
+
+        assertEquals(11 + 2 * BinaryMovementCodec.PLAYER_RECORD_SIZE + 2 + 4, frame.length);
+        assertEquals(2, updated.size());
+        assertEquals("idle-up", updated.get(0).getAnimation());
+        assertEquals(FixedPoint.toDouble(Short.MIN_VALUE), updated.get(1).getX());
+        assertEquals(FixedPoint.toDouble(Short.MAX_VALUE), updated.get(1).getY());
+        assertEquals(List.of(9), left);
+    }
+
+    private static Player player(int handle, double x, double y, String direction, boolean moving) {
+        Player player = new Player();
+        player.setHandle(handle);
+        player.setX(x);
+        player.setY(y);
+        player.setDirection(direction);
+        player.setIsMoving(moving);
+        return player;
+    }
+}
@@ -0,0 +1,62 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.model.Room;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveTickPolicyTest {
+
+    private final AdaptiveTickPolicy policy = new AdaptiveTickPolicy();
+
+    @Test
+    void targetRateHz_ShouldFollowMovingFractionWithinBounds() {
+        assertEquals(5, policy.targetRateHz(20, 10, 0, 0, 0.1));
+        assertEquals(30, policy.targetRateHz(30, 10, 10, 0, 0.1));
+        assertEquals(5, policy.targetRateHz(20, 0, 0, 0, 0));
+    }
+
+    @Test
+    void targetRateHz_ShouldRiseGraduallyAndIgnoreSmallChanges() {
+        // All players moving asks for 30 Hz but the rate climbs one step at a time
+        assertEquals(15, policy.targetRateHz(10, 4, 4, 0, 0.1));
+        // 17.5 Hz is within a step of 15 Hz, so the rate holds
+        assertEquals(15, policy.targetRateHz(15, 4, 2, 0, 0.1));
+    }
+
+    @Test
+    void targetRateHz_ShouldHalveUnderBackPressure() {
+        assertEquals(15, policy.targetRateHz(30, 10, 10, 64, 0.1));
+        assertEquals(15, policy.targetRateHz(30, 10, 10, 0, 0.9));
+        // Never below the minimum, however deep the queues get
+        assertEquals(5, policy.targetRateHz(6, 10, 10, 64, 0.1));
+    }
+
+    @Test
+    void targetRateHz_ShouldSlowCrowdedRooms() {
+        // 200 players, all moving: 30 Hz scaled by sqrt(50 / 200)
+        assertEquals(15, policy.targetRateHz(30, 200, 200, 0, 0.1));
+    }
+
+    @Test
+    void publish_ShouldExposeRateBoundsWithoutPerRoomSeries() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(policy, "meterRegistry", meterRegistry);
+        policy.registerMetrics();
+        Room slow = new Room("ROOM01", Runnable::run);
+        slow.setTickRateHz(5);
+        Room fast = new Room("ROOM02", Runnable::run);
+        fast.setTickRateHz(25);
+
+        policy.publish(List.of(slow, fast));
+
+        assertEquals(5.0, meterRegistry.get("game.rooms.tick.rate.min").gauge().value());
+        assertEquals(25.0, meterRegistry.get("game.rooms.tick.rate.max").gauge().value());
+        assertNull(meterRegistry.find("game.room.tick.rate").gauge());
+    }
+}
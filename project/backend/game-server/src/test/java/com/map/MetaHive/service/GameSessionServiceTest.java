@@ -0,0 +1,496 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.cluster.RoomPlacement;
+import com.map.MetaHive.journal.RoomJournal;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.ProximityEvent;
+import com.map.MetaHive.model.Room;
+import com.map.MetaHive.model.RoomDelta;
+import com.map.MetaHive.model.StateHistory;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class GameSessionServiceTest {
+
+    private GameSessionService gameSessionService;
+    private RoomBroadcaster roomBroadcaster;
+    private SessionRegistry sessionRegistry;
+    private RoomLifecycleManager roomLifecycle;
+    private AdaptiveTickPolicy tickPolicy;
+
+    @BeforeEach
+    void setUp() {
+        gameSessionService = new GameSessionService();
+        roomBroadcaster = mock(RoomBroadcaster.class);
+        ReflectionTestUtils.setField(gameSessionService, "roomBroadcaster", roomBroadcaster);
+        ReflectionTestUtils.setField(gameSessionService, "roomPlacement", new RoomPlacement());
+        sessionRegistry = new SessionRegistry();
+        ReflectionTestUtils.setField(gameSessionService, "sessionRegistry", sessionRegistry);
+        roomLifecycle = new RoomLifecycleManager();
+        ReflectionTestUtils.setField(gameSessionService, "roomLifecycle", roomLifecycle);
+        tickPolicy = new AdaptiveTickPolicy();
+        // Disabled so scheduled ticks never change the rate under a test; enabled where tested
+        ReflectionTestUtils.setField(tickPolicy, "enabled", false);
+        ReflectionTestUtils.setField(gameSessionService, "tickPolicy", tickPolicy);
+        ReflectionTestUtils.setField(gameSessionService, "outboundFlowControl", new OutboundFlowControl());
+        ReflectionTestUtils.setField(gameSessionService, "movementValidator", new MovementValidator());
+        ReflectionTestUtils.setField(gameSessionService, "roomJournal", new RoomJournal());
+        // A slow tick rate keeps the scheduler out of the way; tests drive ticks directly
+        ReflectionTestUtils.setField(gameSessionService, "tickRateHz", 1);
+        ReflectionTestUtils.setField(gameSessionService, "tickThreads", 1);
+        gameSessionService.startTickScheduler();
+        // Run room event loop tasks inline so membership changes are visible immediately
+        ReflectionTestUtils.setField(gameSessionService, "roomWorkers", (Executor) Runnable::run);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gameSessionService.stopTickScheduler();
+    }
+
+    @Test
+    void tick_ShouldApplyQueuedMovesAndPublishOneDelta() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(gameSessionService.submitMove(player("p1", roomId, i * 10, i)));
+        }
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster, times(1)).broadcastDelta(any(), delta.capture());
+        verify(roomBroadcaster, never()).broadcastPlayerStates(any());
+        assertEquals(1, delta.getValue().getUpdated().size());
+        Player moved = gameSessionService.getPlayerById(roomId, "p1");
+        assertEquals(50, moved.getX());
+        assertEquals(5, moved.getY());
+    }
+
+    @Test
+    void tick_ShouldQuantizePositionsAndStampServerTime() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        assertTrue(gameSessionService.submitMove(player("p1", roomId, 10.3, 20.0999)));
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster).broadcastDelta(any(), delta.capture());
+        Player moved = delta.getValue().getUpdated().get(0);
+        assertEquals(10.25, moved.getX());
+        assertEquals(20.0, moved.getY());
+        assertEquals(room.getTickTime(), delta.getValue().getServerTime());
+        assertEquals(room.getTickTime(), moved.getServerTime());
+    }
+
+    @Test
+    void tick_ShouldRejectTeleportAndResendAuthoritativePosition() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        Player teleport = player("p1", roomId, 5000, 5000);
+        teleport.setSeq(1);
+        assertTrue(gameSessionService.submitMove(teleport));
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster).broadcastDelta(any(), delta.capture());
+        Player resent = delta.getValue().getUpdated().get(0);
+        assertEquals(0, resent.getX());
+        assertEquals(0, resent.getY());
+        // Acked, so the client rewinds the rejected input to the server position
+        assertEquals(1, resent.getAck());
+    }
+
+    @Test
+    void tick_ShouldPublishProximityGroupChanges() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        gameSessionService.addPlayer(player("p2", roomId, 50, 0));
+        gameSessionService.addPlayer(player("p3", roomId, 900, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<List<ProximityEvent>> events = ArgumentCaptor.captor();
+        verify(roomBroadcaster).broadcastProximity(eq(roomId), eq(1L), anyLong(), events.capture());
+        assertEquals(List.of("p1", "p2"), events.getValue().stream().map(ProximityEvent::getPlayerId).sorted().toList());
+
+        // Nothing moved, so no proximity traffic
+        clearInvocations(roomBroadcaster);
+        gameSessionService.tick(room);
+        verify(roomBroadcaster, never()).broadcastProximity(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void tick_ShouldNotBroadcastWhenNothingChanged() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        gameSessionService.tick(room);
+
+        verify(roomBroadcaster, never()).broadcastPlayerStates(any());
+        verify(roomBroadcaster, never()).broadcastDelta(any(), any());
+    }
+
+    @Test
+    void tick_ShouldOnlyIncludeChangedPlayersAndLeaves() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        gameSessionService.addPlayer(player("p2", roomId, 0, 0));
+        gameSessionService.addPlayer(player("p3", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        gameSessionService.submitMove(player("p1", roomId, 5, 5));
+        gameSessionService.removePlayer(roomId, "p3");
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster).broadcastDelta(any(), delta.capture());
+        assertEquals(List.of("p1"), delta.getValue().getUpdated().stream().map(Player::getId).toList());
+        assertEquals(List.of("p3"), delta.getValue().getLeft());
+        assertTrue(delta.getValue().getJoined().isEmpty());
+    }
+
+    @Test
+    void tick_ShouldPublishKeyframeWhenIntervalElapsed() {
+        ReflectionTestUtils.setField(gameSessionService, "keyframeIntervalTicks", 2);
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        gameSessionService.tick(room);
+        gameSessionService.tick(room);
+        gameSessionService.tick(room);
+
+        verify(roomBroadcaster, times(2)).broadcastPlayerStates(room);
+    }
+
+    @Test
+    void tick_ShouldSendJoinerItsOwnKeyframeAndAnnounceItInTheDelta() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        Player joiner = player("p2", roomId, 0, 0);
+        joiner.setSessionId("s2");
+        gameSessionService.addPlayer(joiner);
+        gameSessionService.tick(room);
+
+        verify(roomBroadcaster).sendKeyframe(room, List.of("s2"));
+        verify(roomBroadcaster, never()).broadcastPlayerStates(any());
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster).broadcastDelta(any(), delta.capture());
+        assertEquals(List.of("p2"), delta.getValue().getJoined().stream().map(Player::getId).toList());
+    }
+
+    @Test
+    void registerPlayer_ShouldSpawnNewPlayersAndKeepExistingPosition() {
+        String roomId = gameSessionService.createRoom();
+        assertTrue(gameSessionService.registerPlayer(player("p1", roomId, 0, 0), "s1"));
+        Player registered = gameSessionService.getPlayerById(roomId, "p1");
+        assertEquals(GameSessionService.DEFAULT_SPAWN_X, registered.getX());
+        assertEquals("s1", registered.getSessionId());
+
+        double movedX = GameSessionService.DEFAULT_SPAWN_X + 10;
+        gameSessionService.submitMove(player("p1", roomId, movedX, GameSessionService.DEFAULT_SPAWN_Y));
+        gameSessionService.tick(gameSessionService.getRoom(roomId));
+        gameSessionService.registerPlayer(player("p1", roomId, 0, 0), "s2");
+
+        assertEquals(movedX, registered.getX());
+        assertEquals("s2", registered.getSessionId());
+    }
+
+    @Test
+    void evictStaleSessions_ShouldRemoveDisconnectedPlayersInOneDelta() {
+        String roomId = gameSessionService.createRoom();
+        for (int i = 1; i <= 4; i++) {
+            gameSessionService.registerPlayer(player("p" + i, roomId, 0, 0), "s" + i);
+        }
+        // p1 reloaded its tab: the old session's disconnect must not evict it
+        gameSessionService.registerPlayer(player("p1", roomId, 0, 0), "s5");
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+        clearInvocations(roomBroadcaster);
+
+        sessionRegistry.disconnected("s1");
+        sessionRegistry.disconnected("s2");
+        sessionRegistry.disconnected("s4");
+        gameSessionService.evictStaleSessions();
+        gameSessionService.tick(room);
+
+        ArgumentCaptor<RoomDelta> delta = ArgumentCaptor.forClass(RoomDelta.class);
+        verify(roomBroadcaster, times(1)).broadcastDelta(any(), delta.capture());
+        assertEquals(List.of("p2", "p4"), delta.getValue().getLeft());
+        assertEquals(2, room.getPlayers().size());
+        assertTrue(room.hasPlayer("p1"));
+    }
+
+    @Test
+    void createRoom_ShouldStopAtRoomLimitUntilARoomCloses() {
+        ReflectionTestUtils.setField(roomLifecycle, "maxRooms", 2);
+        String first = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", first, 0, 0));
+        assertNotNull(gameSessionService.getOrCreateRoom("JOINED"));
+
+        assertNull(gameSessionService.createRoom());
+        assertNull(gameSessionService.getOrCreateRoom("OTHER"));
+
+        gameSessionService.removePlayer(first, "p1");
+        assertNotNull(gameSessionService.createRoom());
+        assertEquals(2, roomLifecycle.getReservedRoomCount());
+    }
+
+    @Test
+    void registerPlayer_ShouldRejectNewPlayersWhenRoomIsFull() {
+        ReflectionTestUtils.setField(roomLifecycle, "maxPlayersPerRoom", 2);
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.registerPlayer(player("p1", roomId, 0, 0), "s1");
+        gameSessionService.registerPlayer(player("p2", roomId, 0, 0), "s2");
+        assertTrue(roomLifecycle.isFull(gameSessionService.getRoom(roomId)));
+
+        gameSessionService.registerPlayer(player("p3", roomId, 0, 0), "s3");
+        // An existing player reconnecting is not a new admission
+        gameSessionService.registerPlayer(player("p1", roomId, 0, 0), "s4");
+
+        assertNull(gameSessionService.getPlayerById(roomId, "p3"));
+        assertEquals("s4", gameSessionService.getPlayerById(roomId, "p1").getSessionId());
+    }
+
+    @Test
+    void joinInstance_ShouldOverflowCrowdedRoomsAndKeepRelatedPlayersTogether() {
+        ReflectionTestUtils.setField(roomLifecycle, "instanceThreshold", 2);
+        Room first = gameSessionService.joinInstance("ALLHANDS", "p1", null);
+        gameSessionService.registerPlayer(player("p1", first.getId(), 0, 0), "s1");
+        gameSessionService.registerPlayer(player("p2", gameSessionService.joinInstance("ALLHANDS", "p2", null).getId(), 0, 0), "s2");
+        assertEquals("ALLHANDS", first.getId());
+        assertEquals(2, first.getPlayers().size());
+
+        Room overflow = gameSessionService.joinInstance("ALLHANDS", "p3", null);
+        assertEquals("ALLHANDS~2", overflow.getId());
+        assertEquals(2, overflow.getInstanceNumber());
+        assertEquals("ALLHANDS", overflow.getLogicalId());
+
+        // Reconnecting players and players joining a companion stay in that instance
+        assertSame(first, gameSessionService.joinInstance("ALLHANDS", "p1", null));
+        assertSame(first, gameSessionService.joinInstance("ALLHANDS", "p4", "p2"));
+    }
+
+    @Test
+    void reapIdleRooms_ShouldCloseRoomsEmptyPastTtlAndEstimateHeap() {
+        ReflectionTestUtils.setField(roomLifecycle, "idleTtlMs", 0L);
+        Room empty = gameSessionService.getOrCreateRoom("EMPTY1");
+        String occupiedId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", occupiedId, 0, 0));
+
+        gameSessionService.reapIdleRooms();
+
+        assertTrue(empty.isClosed());
+        assertFalse(gameSessionService.roomExists("EMPTY1"));
+        Room occupied = gameSessionService.getRoom(occupiedId);
+        assertFalse(occupied.isClosed());
+        assertTrue(occupied.getEstimatedHeapBytes() > 512);
+        assertEquals(1, roomLifecycle.getReservedRoomCount());
+    }
+
+    @Test
+    void reapIdleRooms_ShouldPublishRoomAggregatesWithoutPerRoomSeries() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(roomLifecycle, "meterRegistry", meterRegistry);
+        roomLifecycle.registerMetrics();
+        String small = gameSessionService.createRoom();
+        String large = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", small, 0, 0));
+        gameSessionService.addPlayer(player("p2", large, 0, 0));
+        gameSessionService.addPlayer(player("p3", large, 0, 0));
+
+        gameSessionService.reapIdleRooms();
+
+        assertEquals(2.0, meterRegistry.get("game.room.players.max").gauge().value());
+        assertEquals(3.0, meterRegistry.get("game.players.active").gauge().value());
+        assertTrue(meterRegistry.get("game.rooms.heap.estimated.max").gauge().value() > 512);
+        assertNull(meterRegistry.find("game.room.players").gauge());
+        assertNull(meterRegistry.find("game.rooms.heap.estimated").gauge());
+    }
+
+    @Test
+    void getOrCreateRoom_ShouldOnlyPublishRoomsWithTheirEventLoop() throws InterruptedException {
+        // Park room loop drains instead of running them, so a task run inline on the caller would show
+        Queue<Runnable> parkedDrains = new ConcurrentLinkedQueue<>();
+        ReflectionTestUtils.setField(gameSessionService, "roomWorkers", (Executor) parkedDrains::add);
+        Thread inbound = new Thread(() -> {
+            while (!gameSessionService.registerPlayer(player("p1", "RACE01", 0, 0), "s1")) {
+                Thread.onSpinWait();
+            }
+        });
+        inbound.start();
+
+        Room room = gameSessionService.getOrCreateRoom("RACE01");
+        inbound.join(5000);
+
+        assertFalse(inbound.isAlive());
+        assertInstanceOf(RoomEventLoop.class, room.getEventLoop());
+        assertFalse(room.hasPlayer("p1"));
+        Runnable drain;
+        while ((drain = parkedDrains.poll()) != null) {
+            drain.run();
+        }
+        assertTrue(room.hasPlayer("p1"));
+    }
+
+    @Test
+    void removePlayer_ShouldCloseEmptyRoom() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+
+        gameSessionService.removePlayer(roomId, "p1");
+
+        assertFalse(gameSessionService.roomExists(roomId));
+        assertTrue(room.isClosed());
+    }
+
+    @Test
+    void submitMove_ShouldKeepOnlyNewestSamplePerPlayer() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+
+        Player newest = player("p1", roomId, 30, 30);
+        newest.setTimestamp(300);
+        Player late = player("p1", roomId, 10, 10);
+        late.setTimestamp(100);
+        gameSessionService.submitMove(newest);
+        gameSessionService.submitMove(late);
+        gameSessionService.tick(room);
+
+        assertEquals(30, gameSessionService.getPlayerById(roomId, "p1").getX());
+        assertEquals(1, room.getCoalescedMoveCount());
+
+        // A late sample arriving after the newer one was applied is dropped too
+        gameSessionService.submitMove(late);
+        gameSessionService.tick(room);
+        assertEquals(30, gameSessionService.getPlayerById(roomId, "p1").getX());
+    }
+
+    @Test
+    void tick_ShouldOrderInputsBySequenceAndAckTheAppliedOne() {
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        gameSessionService.tick(room);
+
+        Player newest = player("p1", roomId, 30, 0);
+        newest.setSeq(3);
+        newest.setTimestamp(1);
+        Player reordered = player("p1", roomId, 20, 0);
+        reordered.setSeq(2);
+        reordered.setTimestamp(2);
+        gameSessionService.submitMove(newest);
+        gameSessionService.submitMove(reordered);
+        gameSessionService.tick(room);
+
+        Player applied = gameSessionService.getPlayerById(roomId, "p1");
+        assertEquals(30, applied.getX());
+        assertEquals(3, applied.getAck());
+
+        // Sequence 2 arriving after 3 was applied is a late packet
+        gameSessionService.submitMove(reordered);
+        gameSessionService.tick(room);
+        assertEquals(30, applied.getX());
+
+        StateHistory history = room.getHistory("p1");
+        assertEquals(3, history.seqAt(history.size() - 1));
+        assertEquals(30, history.xAt(history.size() - 1));
+    }
+
+    @Test
+    void submitMove_ShouldRejectPlayersNotInRoom() {
+        String roomId = gameSessionService.createRoom();
+
+        assertFalse(gameSessionService.submitMove(player("ghost", roomId, 1, 1)));
+    }
+
+    @Test
+    void submitMove_ShouldRejectUnknownRoom() {
+        assertFalse(gameSessionService.submitMove(player("p1", "NOPE", 1, 1)));
+    }
+
+    @Test
+    void createRoom_ShouldOnlyPickIdsOwnedByThisNode() {
+        RoomPlacement placement = new RoomPlacement();
+        ReflectionTestUtils.setField(placement, "nodeId", "node-a");
+        ReflectionTestUtils.setField(placement, "nodes", "node-a=ws://a/ws,node-b=ws://b/ws,node-c=ws://c/ws");
+        ReflectionTestUtils.invokeMethod(placement, "buildRing");
+        ReflectionTestUtils.setField(gameSessionService, "roomPlacement", placement);
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals("node-a", placement.ownerOf(gameSessionService.createRoom()));
+        }
+    }
+
+    @Test
+    void adaptTickRate_ShouldSlowQuietRoomAndReschedule() {
+        ReflectionTestUtils.setField(tickPolicy, "enabled", true);
+        ReflectionTestUtils.setField(tickPolicy, "evaluateEveryMs", 0L);
+        String roomId = gameSessionService.createRoom();
+        gameSessionService.addPlayer(player("p1", roomId, 0, 0));
+        gameSessionService.addPlayer(player("p2", roomId, 0, 0));
+        Room room = gameSessionService.getRoom(roomId);
+        room.setTickRateHz(20);
+        ScheduledFuture<?> previousTask = room.getTickTask();
+
+        gameSessionService.adaptTickRate(room);
+
+        // Nobody is moving, so the room drops to the minimum rate
+        assertEquals(5, room.getTickRateHz());
+        assertTrue(previousTask.isCancelled());
+        assertNotSame(previousTask, room.getTickTask());
+    }
+
+    private static Player player(String id, String roomId, double x, double y) {
+        Player player = new Player();
+        player.setId(id);
+        player.setRoomId(roomId);
+        player.setUsername(id);
+        player.setX(x);
+        player.setY(y);
+        player.setDirection("down");
+        player.setAnimation("idle-down");
+        return player;
+    }
+}
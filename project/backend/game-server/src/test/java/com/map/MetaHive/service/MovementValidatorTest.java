@@ -0,0 +1,63 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.model.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovementValidatorTest {
+
+    private MovementValidator validator;
+
+    @BeforeEach
+    void setUp() {
+        validator = new MovementValidator();
+        // 40x40 tiles of 16 px with a wall around the edge and a block at (320,240)-(384,304)
+        ReflectionTestUtils.setField(validator, "mapLocation", "classpath:maps/test-map.json");
+        ReflectionTestUtils.invokeMethod(validator, "loadMap");
+    }
+
+    @Test
+    void loadMap_ShouldSpawnOnAWalkableTile() {
+        assertEquals(160, validator.getSpawnX());
+        assertTrue(validator.isWalkable(validator.getSpawnX(), validator.getSpawnY()));
+        // The top-left corner is a wall
+        assertFalse(validator.isWalkable(8, 8));
+        assertFalse(validator.isWalkable(330, 250));
+    }
+
+    @Test
+    void loadMap_ShouldFailWhenTheMapIsMissing() {
+        MovementValidator missing = new MovementValidator();
+        ReflectionTestUtils.setField(missing, "mapLocation", "classpath:maps/no-such-map.json");
+
+        assertThrows(IllegalStateException.class, () -> ReflectionTestUtils.invokeMethod(missing, "loadMap"));
+    }
+
+    @Test
+    void check_ShouldLimitDistanceByElapsedRoomTime() {
+        Player player = new Player();
+        player.setX(validator.getSpawnX());
+        player.setY(validator.getSpawnY());
+        player.setLastMoveTime(1000);
+        double x = validator.getSpawnX();
+
+        // 20 Hz: one tick allows 240 px/s * 50 ms + 32 px of slack = 44 px
+        assertEquals(MovementValidator.Verdict.ACCEPTED, validator.check(player, x + 40, player.getY(), 1050, 20));
+        assertEquals(MovementValidator.Verdict.TOO_FAST, validator.check(player, x + 50, player.getY(), 1050, 20));
+        // A long pause does not allow more than max-elapsed-ms of walking
+        assertEquals(MovementValidator.Verdict.TOO_FAST, validator.check(player, x + 200, player.getY(), 60000, 20));
+        assertEquals(2, validator.getRejectedMoveCount());
+    }
+
+    @Test
+    void check_ShouldRejectBlockedTiles() {
+        Player player = new Player();
+        player.setX(20);
+        player.setY(20);
+
+        assertEquals(MovementValidator.Verdict.BLOCKED, validator.check(player, 8, 8, 0, 20));
+    }
+}
@@ -0,0 +1,108 @@
+package com.map.MetaHive.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.model.Room;
+import com.map.MetaHive.model.SpatialGrid;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RoomBroadcasterTest {
+
+    private static final double RADIUS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RoomBroadcaster broadcaster;
+    private SimpMessagingTemplate messagingTemplate;
+    private Room room;
+
+    @BeforeEach
+    void setUp() {
+        broadcaster = new RoomBroadcaster();
+        messagingTemplate = mock(SimpMessagingTemplate.class);
+        when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        SnapshotEncoder snapshotEncoder = new SnapshotEncoder();
+        ReflectionTestUtils.setField(snapshotEncoder, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(broadcaster, "messagingTemplate", messagingTemplate);
+        ReflectionTestUtils.setField(broadcaster, "snapshotEncoder", snapshotEncoder);
+        room = new Room("ROOM01", Runnable::run);
+        room.setSpatialGrid(new SpatialGrid(64));
+    }
+
+    @Test
+    void interestDeltas_ShouldOnlyVisitViewersNearChanges() throws Exception {
+        Player a = join("a", 0, 0);
+        Player b = join("b", 50, 0);
+        join("c", 2000, 2000);
+        broadcaster.broadcastInterestDeltas(room, 1, Set.of("a", "b", "c"), List.of(), true, RADIUS);
+        assertEquals(Set.of("a", "b", "c"), sent().keySet());
+
+        // b moves within a's radius: c is far away and gets nothing
+        move(b, 60, 0);
+        broadcaster.broadcastInterestDeltas(room, 2, Set.of("b"), List.of(), false, RADIUS);
+        Map<String, JsonNode> deltas = sent();
+        assertEquals(Set.of("a", "b"), deltas.keySet());
+        assertEquals("b", deltas.get("a").path("updated").get(0).path("id").asText());
+
+        // Nothing changed: nobody is sent anything
+        broadcaster.broadcastInterestDeltas(room, 3, Set.of(), List.of(), false, RADIUS);
+        assertTrue(sent().isEmpty());
+
+        // b walks out of range into a cell a never scans; a still stood still and must see b leave
+        move(b, 1000, 0);
+        broadcaster.broadcastInterestDeltas(room, 4, Set.of("b"), List.of(), false, RADIUS);
+        deltas = sent();
+        assertEquals(Set.of("a", "b"), deltas.keySet());
+        assertEquals("b", deltas.get("a").path("left").get(0).asText());
+        assertEquals(Set.of("a"), room.getInterestSet("a"));
+        assertEquals(Set.of("b"), room.getInterestSet("b"));
+    }
+
+    private Player join(String id, double x, double y) {
+        Player player = new Player();
+        player.setId(id);
+        player.setUsername(id);
+        player.setSessionId("session-" + id);
+        player.setX(x);
+        player.setY(y);
+        player.setDirection("down");
+        room.addPlayer(player);
+        room.getSpatialGrid().update(id, x, y);
+        return player;
+    }
+
+    private void move(Player player, double x, double y) {
+        player.setX(x);
+        player.setY(y);
+        room.getSpatialGrid().update(player.getId(), x, y);
+    }
+
+    // Deltas sent since the last call, by the viewer whose session they went to
+    private Map<String, JsonNode> sent() throws Exception {
+        ArgumentCaptor<String> destinations = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Message<byte[]>> messages = ArgumentCaptor.captor();
+        verify(messagingTemplate, atLeast(0)).send(destinations.capture(), messages.capture());
+        Map<String, JsonNode> deltas = new HashMap<>();
+        for (int i = 0; i < destinations.getAllValues().size(); i++) {
+            String viewer = destinations.getAllValues().get(i).replaceFirst("^/user/session-([^/]+)/.*$", "$1");
+            deltas.put(viewer, objectMapper.readTree(messages.getAllValues().get(i).getPayload()));
+        }
+        clearInvocations(messagingTemplate);
+        return deltas;
+    }
+}
@@ -0,0 +1,142 @@
+package com.map.MetaHive.service;
+
+import com.map.MetaHive.cluster.RoomPlacement;
+import com.map.MetaHive.journal.RoomJournal;
+import com.map.MetaHive.model.Player;
+import com.map.MetaHive.websocket.OutboundFlowControl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class RoomCheckpointerTest {
+
+    @TempDir
+    Path dir;
+
+    private final List<GameSessionService> services = new ArrayList<>();
+    private final List<RoomCheckpointer> checkpointers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (RoomCheckpointer checkpointer : checkpointers) {
+            checkpointer.stop();
+        }
+        services.forEach(GameSessionService::stopTickScheduler);
+    }
+
+    @Test
+    void restart_ShouldRestorePlayersAtTheirCheckpointedPositions() {
+        GameSessionService before = newService();
+        RoomCheckpointer checkpointer = newCheckpointer(before);
+        String roomId = before.createRoom();
+        before.registerPlayer(player("p1", roomId), "s1");
+        Player p1 = before.getPlayerById(roomId, "p1");
+        p1.setX(123.25);
+        p1.setY(456.5);
+        p1.setDirection("left");
+        checkpointer.checkpoint();
+        assertEquals(1, checkpointer.getCheckpointsWritten());
+        assertFalse(Files.exists(dir.resolve("rooms.ckpt.tmp")));
+
+        GameSessionService after = newService();
+        // Restores on start, as at application startup
+        RoomCheckpointer restored = newCheckpointer(after);
+        assertEquals(1, restored.getRestoredPlayers());
+        Player ghost = after.getPlayerById(roomId, "p1");
+        assertNull(ghost.getSessionId());
+        assertEquals(123.25, ghost.getX());
+        assertEquals("idle-left", ghost.getAnimation());
+
+        // The client registering again claims its old position
+        after.registerPlayer(player("p1", roomId), "s2");
+        after.dropUnclaimedPlayers(roomId, List.of("p1"));
+        Player reclaimed = after.getPlayerById(roomId, "p1");
+        assertEquals("s2", reclaimed.getSessionId());
+        assertEquals(456.5, reclaimed.getY());
+    }
+
+    @Test
+    void unclaimedPlayers_ShouldBeDroppedAndEmptyRoomClosed() {
+        GameSessionService before = newService();
+        String roomId = before.createRoom();
+        before.registerPlayer(player("p1", roomId), "s1");
+        newCheckpointer(before).checkpoint();
+
+        GameSessionService after = newService();
+        newCheckpointer(after);
+        after.dropUnclaimedPlayers(roomId, List.of("p1"));
+
+        assertFalse(after.roomExists(roomId));
+    }
+
+    @Test
+    void corruptCheckpoint_ShouldBeIgnored() throws Exception {
+        GameSessionService before = newService();
+        String roomId = before.createRoom();
+        before.registerPlayer(player("p1", roomId), "s1");
+        newCheckpointer(before).checkpoint();
+        Path file = dir.resolve("rooms.ckpt");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(file, bytes);
+
+        GameSessionService after = newService();
+        RoomCheckpointer restored = newCheckpointer(after);
+
+        assertEquals(0, restored.getRestoredPlayers());
+        assertFalse(after.roomExists(roomId));
+    }
+
+    private RoomCheckpointer newCheckpointer(GameSessionService service) {
+        RoomCheckpointer checkpointer = new RoomCheckpointer();
+        ReflectionTestUtils.setField(checkpointer, "gameSessionService", service);
+        ReflectionTestUtils.setField(checkpointer, "roomPlacement", new RoomPlacement());
+        ReflectionTestUtils.setField(checkpointer, "file", dir.resolve("rooms.ckpt").toString());
+        // Enabled with an interval long enough that only the test writes checkpoints
+        ReflectionTestUtils.setField(checkpointer, "enabled", true);
+        ReflectionTestUtils.setField(checkpointer, "intervalMs", 3_600_000L);
+        ReflectionTestUtils.setField(checkpointer, "reclaimTtlMs", 3_600_000L);
+        checkpointer.start();
+        checkpointers.add(checkpointer);
+        return checkpointer;
+    }
+
+    private GameSessionService newService() {
+        GameSessionService service = new GameSessionService();
+        ReflectionTestUtils.setField(service, "roomBroadcaster", mock(RoomBroadcaster.class));
+        ReflectionTestUtils.setField(service, "roomPlacement", new RoomPlacement());
+        ReflectionTestUtils.setField(service, "sessionRegistry", new SessionRegistry());
+        ReflectionTestUtils.setField(service, "roomLifecycle", new RoomLifecycleManager());
+        AdaptiveTickPolicy tickPolicy = new AdaptiveTickPolicy();
+        ReflectionTestUtils.setField(tickPolicy, "enabled", false);
+        ReflectionTestUtils.setField(service, "tickPolicy", tickPolicy);
+        ReflectionTestUtils.setField(service, "outboundFlowControl", new OutboundFlowControl());
+        ReflectionTestUtils.setField(service, "movementValidator", new MovementValidator());
+        ReflectionTestUtils.setField(service, "roomJournal", new RoomJournal());
+        ReflectionTestUtils.setField(service, "tickRateHz", 1);
+        ReflectionTestUtils.setField(service, "tickThreads", 1);
+        service.startTickScheduler();
+        ReflectionTestUtils.setField(service, "roomWorkers", (Executor) Runnable::run);
+        services.add(service);
+        return service;
+    }
+
+    private static Player player(String id, String roomId) {
+        Player player = new Player();
+        player.setId(id);
+        player.setRoomId(roomId);
+        player.setUsername(id);
+        player.setDirection("down");
+        return player;
+    }
+}
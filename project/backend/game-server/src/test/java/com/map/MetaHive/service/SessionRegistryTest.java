@@ -0,0 +1,56 @@
+package com.map.MetaHive.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class SessionRegistryTest {
+
+    @Test
+    void drainEvictions_ShouldEvictIdleSessionsOnceUntilTheyRebind() throws Exception {
+        SessionRegistry registry = new SessionRegistry();
+        registry.bindPlayer("s1", "ROOM01", "p1");
+        registry.bindPlayer("s2", "ROOM01", "p2");
+        Thread.sleep(300);
+        heartbeat(registry, "s2");
+
+        // Wide margins so a slow machine does not let s2 go idle between the calls
+        List<String> evicted = new ArrayList<>();
+        registry.drainEvictions(200, session -> evicted.add(session.getPlayerId()));
+        assertEquals(List.of("p1"), evicted);
+
+        // Still connected but unbound: not handed out again
+        evicted.clear();
+        registry.drainEvictions(200, session -> evicted.add(session.getPlayerId()));
+        assertTrue(evicted.isEmpty());
+        assertEquals(2, registry.getActiveSessionCount());
+    }
+
+    @Test
+    void drainEvictions_ShouldHandOutDisconnectedSessionsOnce() {
+        SessionRegistry registry = new SessionRegistry();
+        registry.bindPlayer("s1", "ROOM01", "p1");
+        registry.disconnected("s1");
+        registry.disconnected("s1");
+
+        List<String> evicted = new ArrayList<>();
+        registry.drainEvictions(60_000, session -> evicted.add(session.getSessionId()));
+        assertEquals(List.of("s1"), evicted);
+        assertEquals(0, registry.getActiveSessionCount());
+    }
+
+    private static void heartbeat(SessionRegistry registry, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.HEARTBEAT);
+        accessor.setSessionId(sessionId);
+        registry.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()),
+                mock(MessageChannel.class));
+    }
+}
@@ -0,0 +1,119 @@
+package com.map.MetaHive.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class InboundRateLimiterTest {
+
+    private InboundRateLimiter limiter;
+    private MeterRegistry meterRegistry;
+    private OutboundFlowControl outboundFlowControl;
+    private final MessageChannel channel = mock(MessageChannel.class);
+
+    @BeforeEach
+    void setUp() {
+        limiter = new InboundRateLimiter();
+        meterRegistry = new SimpleMeterRegistry();
+        outboundFlowControl = mock(OutboundFlowControl.class);
+        ReflectionTestUtils.setField(limiter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(limiter, "outboundFlowControl", outboundFlowControl);
+        ReflectionTestUtils.setField(limiter, "destinationLimits", "move=60/30,createRoom=0.2/3,other=20/40");
+        limiter.parseLimits();
+    }
+
+    @Test
+    void tokenBucket_ShouldAllowBurstThenRefillAtRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        // 10 per second: one token back after 100ms, never more than the burst
+        assertTrue(bucket.tryAcquire(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(bucket.tryAcquire(TimeUnit.MILLISECONDS.toNanos(100)));
+        long later = TimeUnit.SECONDS.toNanos(10);
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertTrue(bucket.tryAcquire(later));
+        assertFalse(bucket.tryAcquire(later));
+    }
+
+    @Test
+    void destinationOverLimit_ShouldBeDroppedAndCounted() {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(limiter.preSend(send("s1", "/app/createRoom"), channel));
+        }
+        assertNull(limiter.preSend(send("s1", "/app/createRoom"), channel));
+
+        // Other destinations and other sessions keep their own buckets
+        assertNotNull(limiter.preSend(send("s1", "/app/rooms/ABC123/move"), channel));
+        assertNotNull(limiter.preSend(send("s2", "/app/createRoom"), channel));
+        assertEquals(1, limiter.getThrottledCount("createRoom"));
+        assertEquals(1.0, meterRegistry.get("game.inbound.throttled").tag("destination", "createRoom")
+                .functionCounter().count());
+        // Only admitted messages reach the controllers and count as received
+        assertEquals(4, limiter.getReceivedCount("createRoom"));
+        assertEquals(1.0, meterRegistry.get("game.inbound.messages").tag("destination", "move")
+                .functionCounter().count());
+        verifyNoInteractions(outboundFlowControl);
+    }
+
+    @Test
+    void destinationKey_ShouldUseLastSegmentOrShareOtherLimit() {
+        assertEquals("move", limiter.destinationKey("/app/rooms/ABC123/move"));
+        assertEquals("createRoom", limiter.destinationKey("/app/createRoom"));
+        assertEquals(InboundRateLimiter.OTHER, limiter.destinationKey("/app/rooms/ABC123/unknown"));
+        assertEquals(InboundRateLimiter.OTHER, limiter.destinationKey(null));
+    }
+
+    @Test
+    void floodingSession_ShouldBeDisconnectedOnce() {
+        ReflectionTestUtils.setField(limiter, "disconnectAfterViolations", 5);
+        for (int i = 0; i < 50; i++) {
+            limiter.preSend(send("s1", "/app/createRoom"), channel);
+        }
+
+        verify(outboundFlowControl, times(1)).closeSession("s1", CloseStatus.POLICY_VIOLATION);
+        assertEquals(1.0, meterRegistry.get("game.inbound.sessions.disconnected").counter().count());
+    }
+
+    @Test
+    void connectAndHeartbeatFrames_ShouldNeverBeLimited() {
+        ReflectionTestUtils.setField(limiter, "sessionLimit", "1/1");
+        limiter.parseLimits();
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(limiter.preSend(frame("s1", SimpMessageType.CONNECT, null), channel));
+            assertNotNull(limiter.preSend(frame("s1", SimpMessageType.HEARTBEAT, null), channel));
+        }
+        assertNotNull(limiter.preSend(frame("s1", SimpMessageType.SUBSCRIBE, "/topic/rooms/ABC123"), channel));
+        assertNull(limiter.preSend(send("s1", "/app/rooms/ABC123/move"), channel));
+    }
+
+    private static Message<?> send(String sessionId, String destination) {
+        return frame(sessionId, SimpMessageType.MESSAGE, destination);
+    }
+
+    private static Message<?> frame(String sessionId, SimpMessageType type, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
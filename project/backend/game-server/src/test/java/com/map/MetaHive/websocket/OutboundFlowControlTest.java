@@ -0,0 +1,130 @@
+package com.map.MetaHive.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class OutboundFlowControlTest {
+
+    private static final String SESSION_ID = "s1";
+
+    private OutboundFlowControl flowControl;
+    private MeterRegistry meterRegistry;
+    private WebSocketSession session;
+    private final MessageChannel channel = mock(MessageChannel.class);
+    private final MessageHandler handler = mock(MessageHandler.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        flowControl = new OutboundFlowControl();
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(flowControl, "meterRegistry", meterRegistry);
+        flowControl.registerMetrics();
+
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(SESSION_ID);
+        flowControl.decorate(mock(WebSocketHandler.class)).afterConnectionEstablished(session);
+    }
+
+    @Test
+    void queuedSnapshots_ShouldBeSupersededByNewerKeyframe() {
+        Message<?> delta = flowControl.preSend(snapshot("ROOM01", false), channel);
+        Message<?> keyframe = flowControl.preSend(snapshot("ROOM01", true), channel);
+        Message<?> otherRoom = flowControl.preSend(snapshot("ROOM02", false), channel);
+        assertEquals(3, flowControl.getQueuedMessages(SESSION_ID));
+
+        assertNull(flowControl.beforeHandle(delta, channel, handler));
+        assertNotNull(flowControl.beforeHandle(keyframe, channel, handler));
+        assertNotNull(flowControl.beforeHandle(otherRoom, channel, handler));
+        assertEquals(0, flowControl.getQueuedMessages(SESSION_ID));
+        assertEquals(1.0, meterRegistry.get("game.outbound.frames.dropped").tag("reason", "superseded").counter().count());
+    }
+
+    @Test
+    void deltasWithoutKeyframe_ShouldBeDeliveredInOrderUntilTheSessionLags() {
+        ReflectionTestUtils.setField(flowControl, "maxQueuedPerSession", 3);
+        Message<?> first = flowControl.preSend(snapshot("ROOM01", false), channel);
+        Message<?> second = flowControl.preSend(snapshot("ROOM01", false), channel);
+        Message<?> third = flowControl.preSend(snapshot("ROOM01", false), channel);
+        // Each delta only holds its own tick's changes, so none replaces an earlier one
+        assertNull(flowControl.preSend(snapshot("ROOM01", false), channel));
+        assertNull(flowControl.preSend(snapshot("ROOM01", false), channel));
+
+        assertNotNull(flowControl.beforeHandle(first, channel, handler));
+        assertNotNull(flowControl.beforeHandle(second, channel, handler));
+        assertNotNull(flowControl.beforeHandle(third, channel, handler));
+        assertFalse(flowControl.isLagging(SESSION_ID));
+        assertNotNull(flowControl.preSend(snapshot("ROOM01", false), channel));
+        assertEquals(0.0, meterRegistry.get("game.outbound.frames.dropped").tag("reason", "superseded").counter().count());
+        assertEquals(2.0, meterRegistry.get("game.outbound.frames.dropped").tag("reason", "lagging").counter().count());
+    }
+
+    @Test
+    void laggingSession_ShouldOnlyReceiveKeyframesAndControlMessages() {
+        ReflectionTestUtils.setField(flowControl, "maxQueuedPerSession", 2);
+        flowControl.preSend(control(), channel);
+        flowControl.preSend(control(), channel);
+
+        assertNull(flowControl.preSend(snapshot("ROOM01", false), channel));
+        assertTrue(flowControl.isLagging(SESSION_ID));
+        assertNotNull(flowControl.preSend(snapshot("ROOM01", true), channel));
+        assertNotNull(flowControl.preSend(control(), channel));
+        assertEquals(1.0, meterRegistry.get("game.outbound.frames.dropped").tag("reason", "lagging").counter().count());
+        assertEquals(4.0, meterRegistry.get("game.outbound.queue.depth").gauge().value());
+    }
+
+    @Test
+    void sessionLaggingPastThreshold_ShouldBeClosed() throws Exception {
+        ReflectionTestUtils.setField(flowControl, "maxQueuedPerSession", 1);
+        ReflectionTestUtils.setField(flowControl, "disconnectAfterMs", 0L);
+        flowControl.preSend(control(), channel);
+        flowControl.preSend(snapshot("ROOM01", false), channel);
+        Thread.sleep(2);
+        flowControl.preSend(snapshot("ROOM01", false), channel);
+
+        verify(session, times(1)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertNull(flowControl.preSend(control(), channel));
+        assertEquals(1.0, meterRegistry.get("game.outbound.sessions.disconnected").counter().count());
+    }
+
+    @Test
+    void messagesForUntrackedSessions_ShouldPassThrough() {
+        Message<?> message = snapshot("ROOM01", false, "unknown");
+        assertSame(message, flowControl.preSend(message, channel));
+        assertSame(message, flowControl.beforeHandle(message, channel, handler));
+    }
+
+    private static Message<byte[]> snapshot(String roomId, boolean keyframe) {
+        return snapshot(roomId, keyframe, SESSION_ID);
+    }
+
+    private static Message<byte[]> snapshot(String roomId, boolean keyframe, String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setHeader(OutboundFlowControl.ROOM_HEADER, roomId);
+        accessor.setHeader(OutboundFlowControl.KEYFRAME_HEADER, keyframe);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> control() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(SESSION_ID);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
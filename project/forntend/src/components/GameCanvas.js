@@ -29,6 +29,40 @@ import RemoteVideoModal from "./RemoteVideoModal";
 
 const AGORA_APP_ID = "aa57b40426c74add85bb5dcae4557ef6";
 
+// Snapshots kept per remote player for interpolation
+const MAX_SAMPLES = 20;
+// A longer gap between snapshots means the player stood still in between
+const MAX_SAMPLE_GAP = 250;
+
+// Appends a remote player's state at its server time to its interpolation buffer
+function addSample(samples, pData) {
+  if (typeof pData.serverTime !== "number") return;
+  const last = samples[samples.length - 1];
+  if (last && pData.serverTime <= last.t) return;
+  if (last && pData.serverTime - last.t > MAX_SAMPLE_GAP) {
+    // Hold the old position until just before the move, instead of drifting there
+    samples.push({ t: pData.serverTime - MAX_SAMPLE_GAP, x: last.x, y: last.y });
+  }
+  samples.push({ t: pData.serverTime, x: pData.x, y: pData.y });
+  if (samples.length > MAX_SAMPLES) {
+    samples.splice(0, samples.length - MAX_SAMPLES);
+  }
+}
+
+// Position at the given server time, interpolated between the snapshots around it
+function sampleAt(samples, time) {
+  while (samples.length > 1 && samples[1].t <= time) {
+    samples.shift();
+  }
+  const from = samples[0];
+  const to = samples[1];
+  if (!to || time <= from.t) {
+    return from;
+  }
+  const f = (time - from.t) / (to.t - from.t);
+  return { x: from.x + (to.x - from.x) * f, y: from.y + (to.y - from.y) * f };
+}
+
 function GameCanvas({ playerName, roomId }) {
   const canvasRef = useRef(null);
   const gameRef = useRef(null);
@@ -43,6 +77,8 @@ function GameCanvas({ playerName, roomId }) {
 
   // Video Proximity
   const activeCallRef = useRef(false);
+  // Proximity group whose call we are in
+  const callGroupRef = useRef(null);
 
   // Chair Logic
   const nearChairRef = useRef(null);
@@ -70,10 +106,13 @@ function GameCanvas({ playerName, roomId }) {
   const [zoomUid, setZoomUid] = useState(null);
 
   // Movement / Interpolation
-  const PROXIMITY_THRESHOLD = 100;
   const PLAYER_SPEED = 3600;
   const UPDATE_INTERVAL = 1000 / 30;
-  const INTERPOLATION_DELAY = 100;
+  // Remote players are drawn this far behind the server clock, between the two
+  // snapshots around that time; covers two tick intervals at the slowest rate
+  // a room adapts down to (game.tick.adaptive.min-rate-hz on the server)
+  const MIN_TICK_RATE_HZ = 5;
+  const INTERPOLATION_DELAY = (2 * 1000) / MIN_TICK_RATE_HZ;
   const CLEANUP_DELAY = 1000;
 
   const prevMovingRef = useRef(false);
@@ -178,27 +217,26 @@ function GameCanvas({ playerName, roomId }) {
         k.onUpdate(() => {
           if (!playerRef.current) return; // If no local sprite, skip
 
-          // Video Proximity
-          let inProximity = false;
-          Object.values(otherPlayers.current).forEach((op) => {
-            const dist = playerRef.current.pos.dist(op.sprite.pos);
-            if (dist < PROXIMITY_THRESHOLD) {
-              inProximity = true;
-            }
-          });
-          if (inProximity && !activeCallRef.current) {
+          // Video Proximity: the server groups nearby players, each group has its own call
+          const groupId = WebSocketService.getProximityGroupId();
+          if (groupId && callGroupRef.current !== groupId) {
             try {
-              joinVideo(AGORA_APP_ID, roomId);
+              if (activeCallRef.current) {
+                leaveVideo();
+              }
+              joinVideo(AGORA_APP_ID, `${roomId}-${groupId}`);
               activeCallRef.current = true;
+              callGroupRef.current = groupId;
               const localVid = document.getElementById("local-video");
               if (localVid) localVid.style.display = "block";
             } catch (err) {
               console.error("Error starting video call:", err);
             }
-          } else if (!inProximity && activeCallRef.current) {
+          } else if (!groupId && activeCallRef.current) {
             try {
               leaveVideo();
               activeCallRef.current = false;
+              callGroupRef.current = null;
               const localVid = document.getElementById("local-video");
               if (localVid) localVid.style.display = "none";
             } catch (err) {
@@ -314,12 +352,19 @@ function GameCanvas({ playerName, roomId }) {
           }
 
           // Interpolate remote players
+          const serverNow = WebSocketService.serverNow(currentTime);
           Object.values(otherPlayers.current).forEach((op) => {
             const sprite = op.sprite;
-            const elapsed = currentTime - op.lastUpdate;
-            const lerpFactor = Math.min(elapsed / INTERPOLATION_DELAY, 1);
-            sprite.pos.x = k.lerp(op.previousX, sprite.targetX, lerpFactor);
-            sprite.pos.y = k.lerp(op.previousY, sprite.targetY, lerpFactor);
+            if (serverNow !== null && op.samples.length > 0) {
+              const pos = sampleAt(op.samples, serverNow - INTERPOLATION_DELAY);
+              sprite.pos.x = pos.x;
+              sprite.pos.y = pos.y;
+            } else {
+              const elapsed = currentTime - op.lastUpdate;
+              const lerpFactor = Math.min(elapsed / INTERPOLATION_DELAY, 1);
+              sprite.pos.x = k.lerp(op.previousX, sprite.targetX, lerpFactor);
+              sprite.pos.y = k.lerp(op.previousY, sprite.targetY, lerpFactor);
+            }
 
             if (op.nameTag) {
               op.nameTag.pos.x = sprite.pos.x;
@@ -384,6 +429,12 @@ function GameCanvas({ playerName, roomId }) {
         playerNameTagRef.current = localNameTag;
 
         didCreateLocalSpriteRef.current = true;
+      } else if (me && playerRef.current) {
+        // Server corrected our predicted position: snap and keep unacked inputs applied
+        const correction = WebSocketService.reconcile(me);
+        if (correction) {
+          playerRef.current.pos = k.vec2(correction.x, correction.y);
+        }
       }
 
       // Handle remote players
@@ -429,6 +480,7 @@ function GameCanvas({ playerName, roomId }) {
             otherPlayers.current[id] = {
               sprite: spr,
               nameTag,
+              samples: [],
               lastUpdate: currentTime,
               previousX: pData.x,
               previousY: pData.y,
@@ -436,6 +488,7 @@ function GameCanvas({ playerName, roomId }) {
                 ? `run-${pData.direction || "down"}`
                 : `idle-${pData.direction || "down"}`,
             };
+            addSample(otherPlayers.current[id].samples, pData);
           } else {
             // Update existing remote
             const op = otherPlayers.current[id];
@@ -445,6 +498,7 @@ function GameCanvas({ playerName, roomId }) {
               op.sprite.targetX = pData.x;
               op.sprite.targetY = pData.y;
               op.lastUpdate = currentTime;
+              addSample(op.samples, pData);
 
               const targetAnim = pData.isMoving
                 ? `run-${pData.direction || "down"}`
@@ -490,7 +544,12 @@ function GameCanvas({ playerName, roomId }) {
         if (roomId) {
           WebSocketService.joinRoom(roomId)
             .then(() => {
-              console.log("Joined room:", roomId);
+              console.log(
+                "Joined room:",
+                roomId,
+                "instance",
+                WebSocketService.getCurrentInstance()
+              );
             })
             .catch((err) => console.error("Failed to join room:", err));
         } else {
@@ -510,6 +569,7 @@ function GameCanvas({ playerName, roomId }) {
       if (activeCallRef.current) {
         leaveVideo();
         activeCallRef.current = false;
+        callGroupRef.current = null;
       }
       if (WebSocketService.isConnected()) {
         WebSocketService.disconnect();
@@ -10,6 +10,17 @@ function generateUUID() {
   });
 }
 
+// Inputs kept for replay while waiting for the server to acknowledge them
+const MAX_PENDING_INPUTS = 120;
+// Server positions within this many pixels of the prediction are not corrected
+const RECONCILE_TOLERANCE = 1;
+const STOMP_SUBPROTOCOLS = ["v12.stomp", "v11.stomp", "v10.stomp"];
+
+// The server exposes the same STOMP handling without SockJS next to the SockJS endpoint
+function nativeEndpointUrl(sockJsUrl) {
+  return sockJsUrl.replace(/^http/, "ws").replace(/\/ws$/, "/ws-native");
+}
+
 class WebSocketService {
   constructor() {
     this.client = null;
@@ -18,6 +29,15 @@ class WebSocketService {
     this.onPlayerUpdate = null;
     this.currentPlayer = null;
     this.currentRoom = null;
+    // Crowded rooms are split into instances; currentRoom is the instance id
+    this.currentInstance = null;
+    // Game server to connect to; a join may redirect to the node that owns the room
+    this.serverUrl = "http://localhost:9502/ws";
+    // Plain WebSocket first; SockJS once a native connection fails before connecting
+    this.transport = typeof WebSocket !== "undefined" ? "native" : "sockjs";
+    // Local time minus the room's server clock, from the least delayed snapshot seen
+    this.serverClockOffset = null;
+    this.lastServerTime = 0;
 
     // Preserve playerId across reloads
     const storedId = localStorage.getItem("playerId");
@@ -36,10 +56,18 @@ class WebSocketService {
     this.retryCount = 0;
     this.retryDelay = 2000;
     this.roomSubscription = null;
+    this.deltaSubscription = null;
+    this.interestSubscription = null;
+    this.proximitySubscription = null;
+    // Server-assigned conversation group of the local player, or null when alone
+    this.proximityGroupId = null;
     this.username = null;
     this.debounceTimeout = null;
     this.lastMoveTime = 0;
     this.moveInterval = 1000 / 30;
+    // Client-side prediction: movement inputs are numbered and kept until the server acks them
+    this.inputSeq = 0;
+    this.pendingInputs = [];
   }
 
   async connect(username, onConnected, onError) {
@@ -50,7 +78,7 @@ class WebSocketService {
     this.connectionPromise = new Promise((resolve, reject) => {
       try {
         this.client = new Client({
-          webSocketFactory: () => new SockJS("http://localhost:9502/ws"),
+          webSocketFactory: () => this.createSocket(),
           debug: (str) => console.log("STOMP: " + str),
           reconnectDelay: this.retryDelay,
           heartbeatIncoming: 4000,
@@ -71,6 +99,10 @@ class WebSocketService {
 
           onWebSocketError: (event) => {
             console.error("WebSocket error:", event);
+            if (this.transport === "native" && !this.client.connected) {
+              console.log("Native WebSocket failed, falling back to SockJS");
+              this.transport = "sockjs";
+            }
             this.handleConnectionError(event, reject, onError);
           },
 
@@ -89,6 +121,13 @@ class WebSocketService {
     return this.connectionPromise;
   }
 
+  createSocket() {
+    if (this.transport === "native") {
+      return new WebSocket(nativeEndpointUrl(this.serverUrl), STOMP_SUBPROTOCOLS);
+    }
+    return new SockJS(this.serverUrl);
+  }
+
   handleConnectionError(error, reject, onError) {
     if (this.retryCount < this.maxRetries) {
       this.retryCount++;
@@ -113,11 +152,12 @@ class WebSocketService {
 
     return new Promise((resolve, reject) => {
       const subscription = this.client.subscribe(
-        "/queue/roomCreated",
+        "/user/queue/roomCreated",
         (message) => {
           const response = JSON.parse(message.body);
           if (response.success) {
             this.currentRoom = response.roomId;
+            this.currentInstance = response.instance;
             this.subscribeToRoom(response.roomId)
               .then(() => {
                 subscription.unsubscribe();
@@ -126,7 +166,7 @@ class WebSocketService {
               .catch(reject);
           } else {
             subscription.unsubscribe();
-            reject(new Error("Failed to create room"));
+            reject(new Error(response.error || "Failed to create room"));
           }
         }
       );
@@ -138,25 +178,32 @@ class WebSocketService {
     });
   }
 
-  async joinRoom(roomId) {
+  async joinRoom(roomId, redirectsLeft = 1) {
     if (!this.client || !this.client.connected) {
       throw new Error("WebSocket not connected");
     }
 
     return new Promise((resolve, reject) => {
       const subscription = this.client.subscribe(
-        "/queue/joinResult",
+        "/user/queue/joinResult",
         (message) => {
           const response = JSON.parse(message.body);
           subscription.unsubscribe();
 
           if (response.success) {
-            this.currentRoom = roomId;
-            this.subscribeToRoom(roomId)
+            this.currentRoom = response.roomId;
+            this.currentInstance = response.instance;
+            this.subscribeToRoom(response.roomId)
               .then(() => resolve(true))
               .catch(reject);
+          } else if (response.redirect && response.url && redirectsLeft > 0) {
+            console.log(`Room ${roomId} is hosted on ${response.node}, reconnecting`);
+            this.reconnectTo(response.url)
+              .then(() => this.joinRoom(roomId, redirectsLeft - 1))
+              .then(resolve)
+              .catch(reject);
           } else {
-            reject(new Error("Invalid room ID"));
+            reject(new Error(response.error || "Invalid room ID"));
           }
         }
       );
@@ -166,30 +213,91 @@ class WebSocketService {
         body: JSON.stringify({
           username: this.username,
           roomId: roomId,
+          playerId: this.playerId,
         }),
       });
     });
   }
 
+  async reconnectTo(url) {
+    if (this.client) {
+      await this.client.deactivate();
+    }
+    this.connectionPromise = null;
+    this.serverUrl = url;
+    return this.connect(this.username);
+  }
+
   subscribeToRoom(roomId) {
     if (this.client?.connected) {
+      // Every room has its own server clock
+      this.serverClockOffset = null;
+      this.lastServerTime = 0;
       if (this.roomSubscription) {
         this.roomSubscription.unsubscribe();
       }
+      if (this.keyframeSubscription) {
+        this.keyframeSubscription.unsubscribe();
+      }
+      if (this.deltaSubscription) {
+        this.deltaSubscription.unsubscribe();
+      }
+      if (this.interestSubscription) {
+        this.interestSubscription.unsubscribe();
+      }
+      if (this.proximitySubscription) {
+        this.proximitySubscription.unsubscribe();
+      }
+      this.proximityGroupId = null;
 
       return new Promise((resolve, reject) => {
         console.log("Subscribing to room:", roomId);
 
-        this.roomSubscription = this.client.subscribe(
-          `/topic/rooms/${roomId}/players`,
+        // Keyframes carry the full room; deltas only changed players, joins and leaves
+        const onKeyframe = (message) => {
+          try {
+            this.players = JSON.parse(message.body);
+            Object.values(this.players).forEach((p) => this.observeServerTime(p.serverTime));
+            this.notifyPlayerUpdate();
+          } catch (error) {
+            console.error("Error handling player update:", error);
+          }
+        };
+        this.roomSubscription = this.client.subscribe(`/topic/rooms/${roomId}/players`, onKeyframe);
+        // Our own keyframe right after registering, so we need not wait for the periodic one
+        this.keyframeSubscription = this.client.subscribe(`/user/queue/rooms/${roomId}/players`, onKeyframe);
+
+        this.deltaSubscription = this.client.subscribe(
+          `/topic/rooms/${roomId}/delta`,
+          (message) => {
+            try {
+              this.applyDelta(JSON.parse(message.body));
+            } catch (error) {
+              console.error("Error handling player delta:", error);
+            }
+          }
+        );
+
+        // Per-client deltas when the server filters by area of interest
+        this.interestSubscription = this.client.subscribe(
+          `/user/queue/rooms/${roomId}/delta`,
+          (message) => {
+            try {
+              this.applyDelta(JSON.parse(message.body));
+            } catch (error) {
+              console.error("Error handling player delta:", error);
+            }
+          }
+        );
+
+        // Proximity group enters and leaves; only our own player's matter here
+        this.proximitySubscription = this.client.subscribe(
+          `/topic/rooms/${roomId}/proximity`,
           (message) => {
             try {
-              const players = JSON.parse(message.body);
-              if (this.onPlayerUpdate) {
-                this.onPlayerUpdate(players);
-              }
+              this.applyProximityEvents(JSON.parse(message.body).events || []);
             } catch (error) {
-              console.error("Error handling player update:", error);
+              console.error("Error handling proximity update:", error);
             }
           }
         );
@@ -203,6 +311,63 @@ class WebSocketService {
     return Promise.reject(new Error("WebSocket not connected"));
   }
 
+  applyDelta(delta) {
+    this.observeServerTime(delta.serverTime);
+    const players = delta.keyframe ? {} : { ...this.players };
+    (delta.joined || []).forEach((p) => {
+      players[p.id] = p;
+    });
+    (delta.updated || []).forEach((p) => {
+      players[p.id] = p;
+    });
+    (delta.left || []).forEach((id) => {
+      delete players[id];
+    });
+    this.players = players;
+    this.notifyPlayerUpdate();
+  }
+
+  // Tracks the offset between the local clock and the room's monotonic server
+  // clock. The smallest offset seen belongs to the snapshot that travelled
+  // fastest; a clock going backwards means a new room clock, so start over.
+  observeServerTime(serverTime) {
+    if (typeof serverTime !== "number") return;
+    if (serverTime < this.lastServerTime - 1000) {
+      this.serverClockOffset = null;
+    }
+    this.lastServerTime = serverTime;
+    const offset = Date.now() - serverTime;
+    if (this.serverClockOffset === null || offset < this.serverClockOffset) {
+      this.serverClockOffset = offset;
+    }
+  }
+
+  // Current time on the room's server clock, or null before the first snapshot
+  serverNow(localTime = Date.now()) {
+    return this.serverClockOffset === null ? null : localTime - this.serverClockOffset;
+  }
+
+  applyProximityEvents(events) {
+    events.forEach((event) => {
+      if (event.playerId !== this.playerId) return;
+      if (event.type === "enter") {
+        this.proximityGroupId = event.groupId;
+      } else if (event.type === "leave" && this.proximityGroupId === event.groupId) {
+        this.proximityGroupId = null;
+      }
+    });
+  }
+
+  getProximityGroupId() {
+    return this.proximityGroupId;
+  }
+
+  notifyPlayerUpdate() {
+    if (this.onPlayerUpdate) {
+      this.onPlayerUpdate(this.players);
+    }
+  }
+
   // Registers local player with server
   registerInRoom(roomId) {
     if (!this.currentPlayer) {
@@ -220,6 +385,10 @@ class WebSocketService {
         roomId: roomId,
       };
 
+      // The server starts a new input stream for every registration
+      this.inputSeq = 0;
+      this.pendingInputs = [];
+
       console.log("Registering player in room:", roomId);
       return new Promise((resolve, reject) => {
         try {
@@ -259,15 +428,21 @@ class WebSocketService {
 
         if (!changed) return;
 
+        const seq = ++this.inputSeq;
         const updatedPlayer = {
           ...this.currentPlayer,
           ...playerData,
           animation: newAnimation,
           timestamp: now,
+          seq,
           roomId: this.currentRoom,
         };
 
         this.currentPlayer = updatedPlayer;
+        this.pendingInputs.push({ seq, x: updatedPlayer.x, y: updatedPlayer.y });
+        if (this.pendingInputs.length > MAX_PENDING_INPUTS) {
+          this.pendingInputs.shift();
+        }
 
         this.client.publish({
           destination: "/app/move",
@@ -279,6 +454,33 @@ class WebSocketService {
     }
   }
 
+  // Drops inputs the server has applied. If the server's state for the acked
+  // input differs from what was predicted, returns the corrected position with
+  // the still-unacked inputs replayed on top; otherwise returns null.
+  reconcile(serverPlayer) {
+    if (!serverPlayer || !serverPlayer.ack) return null;
+    const acked = this.pendingInputs.find((input) => input.seq === serverPlayer.ack);
+    this.pendingInputs = this.pendingInputs.filter(
+      (input) => input.seq > serverPlayer.ack
+    );
+    if (!acked) return null;
+
+    const dx = serverPlayer.x - acked.x;
+    const dy = serverPlayer.y - acked.y;
+    if (Math.abs(dx) <= RECONCILE_TOLERANCE && Math.abs(dy) <= RECONCILE_TOLERANCE) {
+      return null;
+    }
+    if (this.pendingInputs.length === 0) {
+      return { x: serverPlayer.x, y: serverPlayer.y };
+    }
+    this.pendingInputs.forEach((input) => {
+      input.x += dx;
+      input.y += dy;
+    });
+    const latest = this.pendingInputs[this.pendingInputs.length - 1];
+    return { x: latest.x, y: latest.y };
+  }
+
   movePlayer(playerData) {
     this.sendMovementUpdate(playerData);
     if (playerData.isMoving) {
@@ -332,13 +534,20 @@ class WebSocketService {
   // Cleanup
   disconnect() {
     this.stopMovementUpdates();
-    if (this.roomSubscription) {
-      try {
-        this.roomSubscription.unsubscribe();
-      } catch (error) {
-        console.error("Error unsubscribing:", error);
+    [
+      this.roomSubscription,
+      this.deltaSubscription,
+      this.interestSubscription,
+      this.proximitySubscription,
+    ].forEach((subscription) => {
+      if (subscription) {
+        try {
+          subscription.unsubscribe();
+        } catch (error) {
+          console.error("Error unsubscribing:", error);
+        }
       }
-    }
+    });
     if (this.client?.connected) {
       try {
         this.client.deactivate();
@@ -353,7 +562,11 @@ class WebSocketService {
     this.players = {};
     this.currentPlayer = null;
     this.currentRoom = null;
+    this.currentInstance = null;
+    this.proximityGroupId = null;
     this.connectionPromise = null;
+    this.serverClockOffset = null;
+    this.lastServerTime = 0;
   }
 
   setOnPlayerUpdate(callback) {
@@ -368,6 +581,10 @@ class WebSocketService {
     return this.currentRoom;
   }
 
+  getCurrentInstance() {
+    return this.currentInstance;
+  }
+
   getCurrentPlayer() {
     return this.currentPlayer;
   }